@@ -0,0 +1,21 @@
+#!/bin/sh
+# usage: ./nuchord.sh [--cds] [Main|Headless|Offline|Midi|Bench|Latency] [args...]
+set -e
+root=$(dirname "$0")
+out="$root/out"
+if [ ! -f "$out/nuchord.jar" ] || [ -n "$(find "$root/src" -newer "$out/nuchord.jar" -type f | head -n 1)" ]; then
+	rm -rf "$out/classes"
+	mkdir -p "$out/classes"
+	javac -encoding UTF-8 -d "$out/classes" "$root"/src/*.java
+	cp "$root/src/controls.html" "$out/classes/"
+	jar cf "$out/nuchord.jar" -C "$out/classes" .
+	rm -f "$out/nuchord.jsa"
+fi
+cds=""
+if [ "$1" = "--cds" ]; then
+	shift
+	cds="-XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=$out/nuchord.jsa"
+fi
+main=${1:-Main}
+[ $# -gt 0 ] && shift
+exec java $JAVA_OPTS $cds -cp "$out/nuchord.jar" "$main" "$@"
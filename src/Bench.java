@@ -0,0 +1,247 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+
+public class Bench {
+	interface Op {
+		double run();
+	}
+
+	static volatile double sink;
+	static final long WARMUP_NANOS = 200_000_000L;
+	static final long MEASURE_NANOS = 500_000_000L;
+	static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	String filter;
+	boolean failed;
+
+	Bench(String filter) {
+		this.filter = filter;
+	}
+
+	static long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+	}
+
+	static long loop(Op op, long nanos) {
+		long ops = 0;
+		double acc = 0;
+		long end = System.nanoTime() + nanos;
+		while (System.nanoTime() < end) {
+			for (int i = 0; i < 1000; i++) {
+				acc += op.run();
+			}
+			ops += 1000;
+		}
+		sink = acc;
+		return ops;
+	}
+
+	void measure(String name, Op op) {
+		if (filter != null && !name.contains(filter)) {
+			return;
+		}
+		loop(op, WARMUP_NANOS);
+		long bytes = allocated();
+		long start = System.nanoTime();
+		long ops = loop(op, MEASURE_NANOS);
+		long elapsed = System.nanoTime() - start;
+		bytes = allocated() - bytes;
+		System.out.println(String.format("%-48s %12.1f ns/op %10.1f B/op %10.1f MB/s", name,
+				(double) elapsed / ops, (double) bytes / ops, bytes / (elapsed / 1e3)));
+	}
+
+	static Chord chord(Chord.Variant var, Chord.Modifier mod) {
+		return new Chord(new Chord.Note(Chord.Note.Letter.G, Chord.Note.Accidental.Sharp, 3), var, mod, true);
+	}
+
+	static Sound sound(Chord.Modifier mod) {
+		Sound sound = new Sound(new ArrayList<FreqVol>(), Wavetable.saw);
+		sound.setFreqvols(chord(Chord.Variant.Tonic, mod), 0.5);
+		return sound;
+	}
+
+	static Sound.Effects effects(Sound sound, int mask) {
+		Sound.Effects factory = sound.new Effects();
+		return sound.new Effects(
+				(mask & 1) != 0 ? Optional.of(factory.new Tremelo(0.5, 5)) : Optional.empty(),
+				(mask & 2) != 0 ? Optional.of(factory.new Vibrato(0.3, 2)) : Optional.empty(),
+				(mask & 4) != 0 ? Optional.of(factory.new Glide(0.3)) : Optional.empty(),
+				(mask & 8) != 0 ? Optional.of(factory.new ADSR(0.8, 1.0, 0.6, 2.0)) : Optional.empty(),
+				(mask & 16) != 0 ? Optional.of(factory.new Chorus(4, 0.5)) : Optional.empty());
+	}
+
+	static String effectsName(int mask) {
+		String[] names = { "trem", "vib", "glide", "adsr", "chorus" };
+		StringBuilder out = new StringBuilder();
+		for (int e = 0; e < names.length; e++) {
+			if ((mask & (1 << e)) != 0) {
+				out.append(out.length() == 0 ? "" : "+").append(names[e]);
+			}
+		}
+		return out.length() == 0 ? "none" : out.toString();
+	}
+
+	static Sound stack(Kernels kernels) {
+		Sound stack = sound(Chord.Modifier.MajMinNine);
+		for (Chord.Variant var : new Chord.Variant[] { Chord.Variant.Subdominant, Chord.Variant.Dominant }) {
+			stack.addFreqvols(chord(var, Chord.Modifier.MajMinNine), 0.5);
+		}
+		Sound.Effects factory = stack.new Effects();
+		Sound.Effects.Chorus chorus = factory.new Chorus(Sound.MAX_CHORUS, 0.5);
+		for (int v = 0; v < chorus.voices; v++) {
+			chorus.detunes[v] = 0.5 * (v + 1);
+		}
+		stack.effects = stack.new Effects(Optional.of(factory.new Tremelo(0.5, 5)), Optional.empty(),
+				Optional.empty(), Optional.empty(), Optional.of(chorus));
+		stack.kernels = kernels;
+		return stack;
+	}
+
+	void verify(Kernels kernels) {
+		if (filter != null && !"Kernels".contains(filter)) {
+			return;
+		}
+		Sound scalar = stack(new ScalarKernels());
+		Sound vector = stack(kernels);
+		float[] expected = new float[Sound.MAX_BLOCK];
+		float[] actual = new float[Sound.MAX_BLOCK];
+		double worst = 0;
+		for (int b = 0; b < 200; b++) {
+			scalar.render(expected, 0, expected.length);
+			vector.render(actual, 0, actual.length);
+			for (int f = 0; f < expected.length; f++) {
+				worst = Math.max(worst, Math.abs(expected[f] - actual[f]));
+			}
+		}
+		System.out.println(String.format("Kernels %s vs ScalarKernels max error %.3g %s",
+				kernels.getClass().getSimpleName(), worst, worst <= 1e-6 ? "OK" : "FAILED"));
+		if (!(worst <= 1e-6)) {
+			this.failed = true;
+		}
+	}
+
+	void run() {
+		Sound plain = sound(Chord.Modifier.MajMinNine);
+		measure("Sound.sample", plain::sample);
+		Sound chorused = sound(Chord.Modifier.MajMinNine);
+		chorused.effects = effects(chorused, 16);
+		measure("Sound.sample chorus", chorused::sample);
+
+		float[] block = new float[1024];
+		for (int threads : new int[] { 1, Sound.PROCESSORS }) {
+			Sound stack = stack(new ScalarKernels());
+			stack.threads = threads;
+			stack.render(block, 0, block.length);
+			measure("Sound.render 1024 frames " + stack.activeVoices() + " voices " + threads + " threads", () -> {
+				stack.render(block, 0, block.length);
+				return block[0];
+			});
+		}
+		Kernels preferred = Kernels.preferred();
+		if (!(preferred instanceof ScalarKernels)) {
+			Sound stack = stack(preferred);
+			stack.threads = 1;
+			measure("Sound.render 1024 frames " + preferred.getClass().getSimpleName(), () -> {
+				stack.render(block, 0, block.length);
+				return block[0];
+			});
+			verify(preferred);
+		} else if (filter != null && "Kernels".contains(filter)) {
+			System.out.println("Kernels: no vector kernels loaded, nothing to verify");
+		}
+
+		for (int mask = 0; mask < 32; mask++) {
+			if ((mask & 12) != 0) {
+				continue;
+			}
+			Sound sound = sound(Chord.Modifier.MajMinNine);
+			Sound.Effects effects = effects(sound, mask);
+			VoiceSet set = sound.voiceSet();
+			Voices voices = new Voices(Sound.MAX_NOTES * (Sound.MAX_CHORUS + 1));
+			Modulation modulation = new Modulation();
+			measure("Effects.apply " + effectsName(mask), () -> {
+				System.arraycopy(set.frequency, 0, voices.frequency, 0, set.size());
+				System.arraycopy(set.volume, 0, voices.volume, 0, set.size());
+				effects.modulate(modulation, Modulation.CONTROL);
+				voices.count = set.size();
+				effects.apply(voices);
+				return voices.volume[0];
+			});
+		}
+
+		for (int mask : new int[] { 0, 4, 8, 12 }) {
+			Sound sound = sound(Chord.Modifier.MajMinNine);
+			Sound.Effects effects = effects(sound, mask);
+			Sound.Effects.ADSR adsr = effects.adsr.orElse(null);
+			VoiceSet tonic = sound.voiceSet();
+			double[] frequency = chord(Chord.Variant.Dominant, Chord.Modifier.MajMinNine).frequencies();
+			double[] volume = new double[frequency.length];
+			Arrays.fill(volume, 0.5);
+			VoiceSet dominant = effects.glide.isPresent() ? effects.glide.get().next(tonic, frequency, volume)
+					: new VoiceSet(frequency, volume, tonic.sequence + 1);
+			VoiceSet back = effects.glide.isPresent() ? effects.glide.get().next(dominant, tonic.frequency, tonic.volume)
+					: new VoiceSet(tonic.frequency, tonic.volume, dominant.sequence + 1);
+			VoiceSet[] sets = { dominant, back };
+			VoicePool pool = new VoicePool(Sound.MAX_NOTES * 2);
+			pool.update(tonic, 0, adsr);
+			long[] now = { 0 };
+			measure("VoicePool.update " + effectsName(mask), () -> {
+				now[0]++;
+				pool.update(sets[(int) (now[0] & 1)], now[0], adsr);
+				return pool.size();
+			});
+			measure("VoicePool.advance " + effectsName(mask), () -> {
+				if (++now[0] % 64 == 0) {
+					pool.update(sets[(int) (now[0] / 64 & 1)], now[0], adsr);
+				}
+				double level = 0;
+				for (int v = 0; v < pool.size(); v++) {
+					VoicePool.Voice voice = pool.voices[v];
+					pool.advance(voice, adsr, Modulation.CONTROL);
+					level += voice.level * voice.frequency;
+				}
+				return level;
+			});
+		}
+
+		String[] waveNames = { "sine", "saw", "square", "triangle" };
+		Oscillator[] waves = { Vars.sine, Vars.saw, Vars.square, Vars.triangle };
+		for (int w = 0; w < waves.length; w++) {
+			Oscillator wave = waves[w];
+			double[] phase = { 0 };
+			double increment = 440.0 / 44800;
+			measure("Vars." + waveNames[w], () -> {
+				double out = wave.apply(phase[0], increment);
+				phase[0] += increment;
+				phase[0] -= (long) phase[0];
+				return out;
+			});
+		}
+
+		for (Chord.Variant var : Chord.Variant.values()) {
+			for (Chord.Modifier mod : Chord.Modifier.values()) {
+				Chord chord = chord(var, mod);
+				measure("Chord.notes " + var + " " + mod, () -> chord.notes().size());
+				measure("Chord.frequencies " + var + " " + mod, () -> chord.frequencies().length);
+			}
+		}
+
+		Chord.Note note = new Chord.Note(Chord.Note.Letter.G, Chord.Note.Accidental.Sharp, 3);
+		int[] delta = { -12 };
+		measure("Chord.Note.offset_semitones", () -> {
+			delta[0] = delta[0] == 14 ? -12 : delta[0] + 1;
+			return note.offset_semitones(delta[0]).oct;
+		});
+	}
+
+	public static void main(String[] args) {
+		Bench bench = new Bench(args.length > 0 ? args[0] : null);
+		bench.run();
+		if (bench.failed) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+public class BlockRing {
+	private final byte[][] blocks;
+	private volatile long head, tail;
+
+	public BlockRing(int capacity, int bytes) {
+		this.blocks = new byte[capacity][bytes];
+		this.head = 0;
+		this.tail = 0;
+	}
+
+	public int capacity() {
+		return this.blocks.length;
+	}
+
+	public int size() {
+		return (int) (this.head - this.tail);
+	}
+
+	public byte[] claim() {
+		long head = this.head;
+		if (head - this.tail >= this.blocks.length) {
+			return null;
+		}
+		return this.blocks[(int) (head % this.blocks.length)];
+	}
+
+	public void publish() {
+		this.head = this.head + 1;
+	}
+
+	public byte[] peek() {
+		long tail = this.tail;
+		if (tail >= this.head) {
+			return null;
+		}
+		return this.blocks[(int) (tail % this.blocks.length)];
+	}
+
+	public void release() {
+		this.tail = this.tail + 1;
+	}
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+public class Bus {
+	public static class Part {
+		public final Sound sound;
+		public volatile double gain;
+
+		Part(Sound sound, double gain) {
+			this.sound = sound;
+			this.gain = gain;
+		}
+	}
+
+	static final double RELEASE = 0.05;
+
+	public final Sound lead;
+	public final EngineMetrics metrics;
+	private volatile Part[] parts = new Part[0];
+	public final Limiter limiter;
+	private float[] block = new float[Sound.MAX_BLOCK];
+
+	public Bus(Sound lead) {
+		this.lead = lead;
+		this.metrics = lead.metrics;
+		this.limiter = new Limiter(Integer.getInteger("nuchord.lookahead", 64));
+		this.limiter.rate(lead.sampleRate, RELEASE);
+		this.metrics.limiter = this.limiter;
+		add(lead, 1.0);
+	}
+
+	public synchronized Part add(Sound sound, double gain) {
+		Part part = new Part(sound, gain);
+		sound.sampleRate = this.lead.sampleRate;
+		Part[] parts = Arrays.copyOf(this.parts, this.parts.length + 1);
+		parts[parts.length - 1] = part;
+		this.parts = parts;
+		return part;
+	}
+
+	public synchronized void remove(Part part) {
+		Part[] parts = this.parts;
+		for (int p = 0; p < parts.length; p++) {
+			if (parts[p] == part && part.sound != this.lead) {
+				Part[] next = new Part[parts.length - 1];
+				System.arraycopy(parts, 0, next, 0, p);
+				System.arraycopy(parts, p + 1, next, p, parts.length - p - 1);
+				this.parts = next;
+				return;
+			}
+		}
+	}
+
+	public Part[] parts() {
+		return this.parts;
+	}
+
+	public int activeVoices() {
+		int voices = 0;
+		for (Part part : this.parts) {
+			voices += part.sound.activeVoices();
+		}
+		return voices;
+	}
+
+	public void render(float[] out, int offset, int frames) {
+		Part[] parts = this.parts;
+		Arrays.fill(out, offset, offset + frames, 0.0f);
+		if (this.block.length < frames) {
+			this.block = new float[frames];
+		}
+		float[] block = this.block;
+		for (Part part : parts) {
+			float gain = (float) part.gain;
+			part.sound.render(block, 0, frames);
+			for (int i = 0; i < frames; i++) {
+				out[offset + i] += block[i] * gain;
+			}
+		}
+		this.limiter.process(out, offset, frames);
+	}
+
+	private boolean running() {
+		return this.lead.flags.state == Sound.SoundState.Running;
+	}
+
+	public void play() {
+		Output output = Output.negotiate(this.lead.bufferSize);
+		int warmup = Integer.getInteger("nuchord.warmup", 64);
+		if (warmup > 0) {
+			long start = System.nanoTime();
+			this.lead.warm(warmup);
+			System.out.println(String.format("Warmed up %d blocks in %.0f ms", warmup, (System.nanoTime() - start) / 1e6));
+		}
+		try {
+			output.open();
+		} catch (LineUnavailableException | IllegalArgumentException exception) {
+			System.err.println(exception);
+			return;
+		}
+		int capacity = Math.max(2, Integer.getInteger("nuchord.ring", 4));
+		int prefill = Math.min(capacity, Math.max(1, Integer.getInteger("nuchord.prefill", 2)));
+		System.out.println("Output: " + output + ", " + prefill + "/" + capacity + " blocks prefilled, "
+				+ this.limiter.lookahead + " frames limiter lookahead");
+		stream(output, capacity, prefill);
+	}
+
+	public void stream(Output output, int capacity, int prefill) {
+		SourceDataLine line = output.line;
+		int sampleRate = (int) output.format.getSampleRate();
+		for (Part part : this.parts) {
+			part.sound.sampleRate = sampleRate;
+			Journal journal = part.sound.journal;
+			if (journal != null) {
+				journal.rate(part.sound.currentsample, sampleRate);
+			}
+		}
+		this.limiter.rate(sampleRate, RELEASE);
+		int frames = output.frames;
+		BlockRing ring = new BlockRing(capacity, frames * output.format.getFrameSize());
+		EngineMetrics metrics = this.metrics;
+		metrics.blockNanos = (long) (1e9 * frames / sampleRate);
+		metrics.ringCapacity = capacity;
+		Thread jmx = new Thread(() -> metrics.register("nuchord:type=Engine"), "nuchord-jmx");
+		jmx.setDaemon(true);
+		jmx.start();
+		Thread writer = Thread.currentThread();
+		Thread renderer = new Thread("nuchord-render") {
+			public void run() {
+				float[] block = new float[frames];
+				while (running()) {
+					byte[] buffer = ring.claim();
+					if (buffer == null) {
+						LockSupport.park();
+						continue;
+					}
+					long start = System.nanoTime();
+					render(block, 0, frames);
+					Output.encode(block, frames, output.format, buffer);
+					metrics.recordRender(System.nanoTime() - start, activeVoices());
+					ring.publish();
+					LockSupport.unpark(writer);
+				}
+			}
+		};
+		renderer.setPriority(Thread.MAX_PRIORITY);
+		renderer.setDaemon(true);
+		renderer.start();
+		while (ring.size() < prefill && running()) {
+			LockSupport.parkNanos(metrics.blockNanos);
+		}
+		line.start();
+		boolean primed = false;
+		while (running()) {
+			byte[] buffer = ring.peek();
+			if (buffer == null) {
+				metrics.recordStarved();
+				LockSupport.parkNanos(metrics.blockNanos / 8);
+				continue;
+			}
+			if (metrics.getFirstAudibleMillis() < 0 && !Output.silent(buffer)) {
+				System.out.println("First audible block " + metrics.recordAudible() + " ms after launch");
+			}
+			boolean underrun = primed && line.available() >= line.getBufferSize();
+			metrics.recordWrite(underrun, ring.size());
+			line.write(buffer, 0, buffer.length);
+			ring.release();
+			LockSupport.unpark(renderer);
+			primed = true;
+		}
+		LockSupport.unpark(renderer);
+	}
+}
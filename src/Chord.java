@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class Chord {
 	public static class Note {
@@ -31,9 +32,9 @@ public class Chord {
 			Sharp, Natural
 		}
 
-		public Letter let;
-		public Accidental acc;
-		public int oct;
+		public final Letter let;
+		public final Accidental acc;
+		public final int oct;
 
 		public Note(Letter letter, Accidental accidental, int octave) {
 			this.let = letter;
@@ -176,16 +177,65 @@ public class Chord {
 		Aug, // ⇖
 	};
 
-	public Note key;
-	public Variant var;
-	public Modifier mod;
-	public boolean maj;
+	static final int OCTAVES = 8;
+	private static final Variant[] VARIANTS = Variant.values();
+	private static final Modifier[] MODIFIERS = Modifier.values();
+	private static final AtomicReferenceArray<double[][]> VOICINGS = new AtomicReferenceArray<>(OCTAVES * 12);
+
+	private static double[][] voicings(int key) {
+		double[][] row = VOICINGS.get(key);
+		if (row != null) {
+			return row;
+		}
+		row = new double[VARIANTS.length * MODIFIERS.length * 2][];
+		Note note = new Note(Note.Letter.C, Note.Accidental.Natural, 0).offset_semitones(key);
+		for (Variant var : VARIANTS) {
+			for (Modifier mod : MODIFIERS) {
+				row[index(var, mod, true)] = new Chord(note, var, mod, true).compute();
+				row[index(var, mod, false)] = new Chord(note, var, mod, false).compute();
+			}
+		}
+		VOICINGS.compareAndSet(key, null, row);
+		return VOICINGS.get(key);
+	}
+
+	private static int index(Variant var, Modifier mod, boolean maj) {
+		return (var.ordinal() * MODIFIERS.length + mod.ordinal()) * 2 + (maj ? 1 : 0);
+	}
+
+	public final Note key;
+	public final Variant var;
+	public final Modifier mod;
+	public final boolean maj;
+	private final int keyIndex;
 
 	public Chord(Note p_key, Variant p_var, Modifier p_mod, boolean p_maj) {
 		this.key = p_key;
 		this.var = p_var;
 		this.mod = p_mod;
 		this.maj = p_maj;
+		this.keyIndex = p_key.semitone_value() + 12 * p_key.oct;
+	}
+
+	public Chord with(Variant p_var, Modifier p_mod) {
+		return new Chord(this.key, p_var, p_mod, this.maj);
+	}
+
+	private double[] compute() {
+		ArrayList<Note> notes = notes();
+		double[] out = new double[notes.size()];
+		for (int n = 0; n < out.length; n++) {
+			out[n] = notes.get(n).frequency();
+		}
+		return out;
+	}
+
+	// shared between every chord with the same voicing; callers must not modify it
+	public double[] frequencies() {
+		if (this.keyIndex < 0 || this.keyIndex >= OCTAVES * 12) {
+			return compute();
+		}
+		return voicings(this.keyIndex)[index(this.var, this.mod, this.maj)];
 	}
 
 	public ArrayList<Note> notes() {
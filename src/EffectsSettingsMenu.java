@@ -24,6 +24,7 @@ public class EffectsSettingsMenu extends JDialog {
 	private JLabel adsrTimeToPeakLabel;
 	private JLabel adsrSustainLabel;
 	private JLabel adsrTimeToReleaseLabel;
+	private JComboBox<VoicePool.Stealing> voiceStealing;
 	private JCheckBox glideEnabled;
 	private JSlider glideDuration;
 	private JLabel glideDurationLabel;
@@ -70,6 +71,7 @@ public class EffectsSettingsMenu extends JDialog {
 		adsrTimeToPeakLabel = new JLabel("Time to Peak: 1.0s");
 		adsrSustainLabel = new JLabel("Sustain: 0.6");
 		adsrTimeToReleaseLabel = new JLabel("Release Time: 2.0s");
+		voiceStealing = new JComboBox<>(VoicePool.Stealing.values());
 		glideEnabled = new JCheckBox("Enable Glide");
 		glideDuration = new JSlider(1, 100, 30);
 		glideDurationLabel = new JLabel("Duration: 3.0s");
@@ -123,7 +125,8 @@ public class EffectsSettingsMenu extends JDialog {
 				adsrPeakLabel, adsrPeak,
 				adsrTimeToPeakLabel, adsrTimeToPeak,
 				adsrSustainLabel, adsrSustain,
-				adsrTimeToReleaseLabel, adsrTimeToRelease
+				adsrTimeToReleaseLabel, adsrTimeToRelease,
+				new JLabel("Voice Stealing:"), voiceStealing
 		});
 		JPanel glidePanel = createEffectPanel("Glide", new Component[] {
 				glideEnabled,
@@ -227,6 +230,7 @@ public class EffectsSettingsMenu extends JDialog {
 	}
 
 	private void loadCurrentSettings() {
+		voiceStealing.setSelectedItem(currentSound.pool.stealing);
 		if (currentSound.effects != null) {
 			if (currentSound.effects.trem.isPresent()) {
 				tremoloEnabled.setSelected(true);
@@ -286,7 +290,8 @@ public class EffectsSettingsMenu extends JDialog {
 			adsr = Optional.of(currentSound.new Effects().new ADSR(peak, timeToPeak, sustain, timeToRelease));
 		}
 		if (glideEnabled.isSelected()) {
-			glide = Optional.of(currentSound.new Effects().new Glide());
+			double duration = glideDuration.getValue() / 10.0;
+			glide = Optional.of(currentSound.new Effects().new Glide(duration));
 		}
 		Optional<Sound.Effects.Chorus> chorus = Optional.empty();
 		if (chorusEnabled.isSelected()) {
@@ -294,7 +299,9 @@ public class EffectsSettingsMenu extends JDialog {
 			double detune = chorusDetune.getValue() / 10.0;
 			chorus = Optional.of(currentSound.new Effects().new Chorus(voices, detune));
 		}
+		currentSound.pool.stealing = (VoicePool.Stealing) voiceStealing.getSelectedItem();
 		currentSound.effects = currentSound.new Effects(trem, vib, glide, adsr, chorus);
+		currentSound.changed();
 		JOptionPane.showMessageDialog(this, "Effects applied successfully!", "Success",
 				JOptionPane.INFORMATION_MESSAGE);
 	}
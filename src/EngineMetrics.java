@@ -0,0 +1,185 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class EngineMetrics implements EngineMetricsMBean {
+	static final int BUCKETS = 16;
+
+	private final Sound sound;
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private volatile long blocks, underruns, totalNanos, lastNanos, maxNanos;
+	private volatile int activeVoices;
+	private volatile long starved;
+	private volatile int ringOccupancy, minRingOccupancy = Integer.MAX_VALUE;
+	private volatile long firstAudibleMillis = -1;
+	volatile long blockNanos = 1;
+	volatile int ringCapacity;
+	volatile Limiter limiter;
+
+	public EngineMetrics(Sound sound) {
+		this.sound = sound;
+	}
+
+	public void register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		} catch (JMException exception) {
+			System.err.println(exception);
+		}
+	}
+
+	public void recordRender(long renderNanos, int voices) {
+		long micros = renderNanos / 1000;
+		int bucket = micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		histogram.incrementAndGet(bucket);
+		blocks++;
+		totalNanos += renderNanos;
+		lastNanos = renderNanos;
+		if (renderNanos > maxNanos) {
+			maxNanos = renderNanos;
+		}
+		activeVoices = voices;
+	}
+
+	public void recordWrite(boolean underrun, int occupancy) {
+		if (underrun) {
+			underruns++;
+		}
+		ringOccupancy = occupancy;
+		if (occupancy < minRingOccupancy) {
+			minRingOccupancy = occupancy;
+		}
+	}
+
+	public long recordAudible() {
+		if (firstAudibleMillis < 0) {
+			firstAudibleMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		}
+		return firstAudibleMillis;
+	}
+
+	public void recordStarved() {
+		starved++;
+		ringOccupancy = 0;
+		minRingOccupancy = 0;
+	}
+
+	@Override
+	public long getBlocks() {
+		return blocks;
+	}
+
+	@Override
+	public long getUnderruns() {
+		return underruns;
+	}
+
+	@Override
+	public int getActiveVoices() {
+		return activeVoices;
+	}
+
+	@Override
+	public double getLastRenderMicros() {
+		return lastNanos / 1e3;
+	}
+
+	@Override
+	public double getMaxRenderMicros() {
+		return maxNanos / 1e3;
+	}
+
+	@Override
+	public double getMeanRenderMicros() {
+		long count = blocks;
+		return count == 0 ? 0 : totalNanos / 1e3 / count;
+	}
+
+	@Override
+	public double getBudgetUsedPercent() {
+		return 100.0 * lastNanos / blockNanos;
+	}
+
+	@Override
+	public double getPeakBudgetUsedPercent() {
+		return 100.0 * maxNanos / blockNanos;
+	}
+
+	@Override
+	public long[] getRenderHistogram() {
+		long[] out = new long[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++) {
+			out[b] = histogram.get(b);
+		}
+		return out;
+	}
+
+	@Override
+	public long getStarvedWrites() {
+		return starved;
+	}
+
+	@Override
+	public int getRingCapacity() {
+		return ringCapacity;
+	}
+
+	@Override
+	public int getRingOccupancy() {
+		return ringOccupancy;
+	}
+
+	@Override
+	public int getMinRingOccupancy() {
+		return minRingOccupancy == Integer.MAX_VALUE ? ringOccupancy : minRingOccupancy;
+	}
+
+	@Override
+	public long getCoalescedUpdates() {
+		return sound.coalesced();
+	}
+
+	@Override
+	public double getLimiterReductionDb() {
+		Limiter limiter = this.limiter;
+		return limiter == null ? 0 : 20 * Math.log10(limiter.reduction());
+	}
+
+	@Override
+	public int getLimiterLookaheadFrames() {
+		Limiter limiter = this.limiter;
+		return limiter == null ? 0 : limiter.lookahead;
+	}
+
+	@Override
+	public long getJournalDropped() {
+		Journal journal = sound.journal;
+		return journal == null ? 0 : journal.dropped;
+	}
+
+	@Override
+	public long getFirstAudibleMillis() {
+		return firstAudibleMillis;
+	}
+
+	@Override
+	public void reset() {
+		for (int b = 0; b < BUCKETS; b++) {
+			histogram.set(b, 0);
+		}
+		blocks = 0;
+		underruns = 0;
+		starved = 0;
+		minRingOccupancy = Integer.MAX_VALUE;
+		totalNanos = 0;
+		lastNanos = 0;
+		maxNanos = 0;
+	}
+}
@@ -0,0 +1,39 @@
+public interface EngineMetricsMBean {
+	long getBlocks();
+
+	long getUnderruns();
+
+	int getActiveVoices();
+
+	double getLastRenderMicros();
+
+	double getMaxRenderMicros();
+
+	double getMeanRenderMicros();
+
+	double getBudgetUsedPercent();
+
+	double getPeakBudgetUsedPercent();
+
+	long[] getRenderHistogram();
+
+	long getStarvedWrites();
+
+	int getRingCapacity();
+
+	int getRingOccupancy();
+
+	int getMinRingOccupancy();
+
+	long getCoalescedUpdates();
+
+	long getFirstAudibleMillis();
+
+	long getJournalDropped();
+
+	double getLimiterReductionDb();
+
+	int getLimiterLookaheadFrames();
+
+	void reset();
+}
@@ -0,0 +1,318 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+public class Headless {
+	static class Connection {
+		final ByteBuffer in = ByteBuffer.allocate(4096);
+		final ByteBuffer out = ByteBuffer.allocate(16384);
+	}
+
+	static class Layer {
+		final Bus.Part part;
+		final Sound sound;
+		Chord chord = new Chord(new Chord.Note(Chord.Note.Letter.G, Chord.Note.Accidental.Sharp, 3),
+				Chord.Variant.None, Chord.Modifier.None, true);
+		double volume = 0.5;
+
+		Layer(Bus.Part part) {
+			this.part = part;
+			this.sound = part.sound;
+		}
+	}
+
+	static final int MAX_LAYERS = 8;
+
+	final Bus bus;
+	final List<Layer> layers = new ArrayList<>();
+	Layer layer;
+
+	public Headless(Sound sound) {
+		this.bus = new Bus(sound);
+		this.layer = new Layer(this.bus.parts()[0]);
+		this.layers.add(this.layer);
+	}
+
+	void part(int index) {
+		if (index < 0 || index >= MAX_LAYERS) {
+			throw new IllegalArgumentException("part out of range: " + index);
+		}
+		while (this.layers.size() <= index) {
+			Sound sound = new Sound(new ArrayList<FreqVol>(), Wavetable.saw);
+			sound.effects = sound.new Effects();
+			this.layers.add(new Layer(this.bus.add(sound, 1.0)));
+		}
+		this.layer = this.layers.get(index);
+	}
+
+	static Oscillator wave(String name) {
+		switch (name) {
+			case "sine":
+				return Wavetable.sine;
+			case "saw":
+				return Wavetable.saw;
+			case "square":
+				return Wavetable.square;
+			case "triangle":
+				return Wavetable.triangle;
+			default:
+				throw new IllegalArgumentException("unknown wave " + name);
+		}
+	}
+
+	static double number(String[] words, int index) {
+		if (index >= words.length) {
+			throw new IllegalArgumentException("missing argument " + index + " for " + words[0]);
+		}
+		return Double.parseDouble(words[index]);
+	}
+
+	static boolean off(String[] words) {
+		return words.length > 1 && words[1].equals("off");
+	}
+
+	void effects(String[] words) {
+		Sound.Effects current = this.layer.sound.effects;
+		Sound.Effects factory = this.layer.sound.new Effects();
+		Optional<Sound.Effects.Tremelo> trem = current.trem;
+		Optional<Sound.Effects.Vibrato> vib = current.vib;
+		Optional<Sound.Effects.Glide> glide = current.glide;
+		Optional<Sound.Effects.ADSR> adsr = current.adsr;
+		Optional<Sound.Effects.Chorus> chorus = current.chorus;
+		switch (words[0]) {
+			case "trem":
+				trem = off(words) ? Optional.empty()
+						: Optional.of(factory.new Tremelo(number(words, 1), number(words, 2)));
+				break;
+			case "vib":
+				vib = off(words) ? Optional.empty()
+						: Optional.of(factory.new Vibrato(number(words, 1), number(words, 2)));
+				break;
+			case "glide":
+				glide = off(words) ? Optional.empty() : Optional.of(factory.new Glide(number(words, 1)));
+				break;
+			case "adsr":
+				adsr = off(words) ? Optional.empty()
+						: Optional.of(factory.new ADSR(number(words, 1), number(words, 2), number(words, 3),
+								number(words, 4)));
+				break;
+			case "chorus":
+				chorus = off(words) ? Optional.empty()
+						: Optional.of(factory.new Chorus((int) number(words, 1), number(words, 2)));
+				break;
+		}
+		this.layer.sound.effects = this.layer.sound.new Effects(trem, vib, glide, adsr, chorus);
+	}
+
+	String status() {
+		EngineMetrics metrics = this.bus.metrics;
+		Chord.Note key = this.layer.chord.key;
+		String name = key.let + (key.acc == Chord.Note.Accidental.Sharp ? "#" : "") + key.oct;
+		return String.format("ok part %d/%d %s %s %s volume %.2f gain %.2f voices %d render %.0fus budget %.1f%% underruns %d limiter %.1fdB journal dropped %d",
+				this.layers.indexOf(this.layer), this.layers.size(), name, this.layer.chord.var, this.layer.chord.mod, this.layer.volume, this.layer.part.gain, this.bus.activeVoices(),
+				metrics.getLastRenderMicros(), metrics.getBudgetUsedPercent(), metrics.getUnderruns(),
+				metrics.getLimiterReductionDb(), metrics.getJournalDropped());
+	}
+
+	public synchronized String execute(String line) {
+		String[] words = line.strip().split("\\s+");
+		try {
+			switch (words[0]) {
+				case "":
+					return null;
+				case "chord":
+					Chord.Variant var = Chord.Variant.valueOf(words[1]);
+					Chord.Modifier mod = words.length > 2 ? Chord.Modifier.valueOf(words[2]) : Chord.Modifier.None;
+					this.layer.chord = this.layer.chord.with(var, mod);
+					this.layer.sound.setFreqvols(this.layer.chord, this.layer.volume);
+					break;
+				case "key":
+					Chord.Note key = new Chord.Note(Chord.Note.Letter.valueOf(words[1]),
+							Chord.Note.Accidental.valueOf(words[2]), Integer.parseInt(words[3]));
+					boolean maj = words.length < 5 || words[4].equals("maj");
+					this.layer.chord = new Chord(key, this.layer.chord.var, this.layer.chord.mod, maj);
+					this.layer.sound.setFreqvols(this.layer.chord, this.layer.volume);
+					break;
+				case "volume":
+					this.layer.volume = Math.max(0, Math.min(1, number(words, 1)));
+					this.layer.sound.setFreqvols(this.layer.chord, this.layer.volume);
+					break;
+				case "wave":
+					this.layer.sound.wave = wave(words[1]);
+					break;
+				case "trem":
+				case "vib":
+				case "glide":
+				case "adsr":
+				case "chorus":
+					effects(words);
+					break;
+				case "part":
+					part((int) number(words, 1));
+					return "ok";
+				case "gain":
+					this.layer.part.gain = Math.max(0, number(words, 1));
+					return "ok";
+				case "stealing":
+					this.layer.sound.pool.stealing = VoicePool.Stealing.valueOf(words[1]);
+					break;
+				case "status":
+					return status();
+				case "quit":
+					System.exit(0);
+				default:
+					return "error unknown command " + words[0];
+			}
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			return "error " + e.getMessage();
+		}
+		this.layer.sound.changed();
+		return "ok";
+	}
+
+	void stdin() {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				String reply = execute(line);
+				if (reply != null) {
+					System.out.println(reply);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(e);
+		}
+	}
+
+	static SocketAddress address(String control) {
+		if (control.contains("/")) {
+			return UnixDomainSocketAddress.of(control);
+		}
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(control));
+	}
+
+	void serve(SocketAddress address) throws IOException {
+		ServerSocketChannel server;
+		if (address instanceof UnixDomainSocketAddress) {
+			Path path = ((UnixDomainSocketAddress) address).getPath();
+			Files.deleteIfExists(path);
+			path.toFile().deleteOnExit();
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		} else {
+			server = ServerSocketChannel.open();
+		}
+		server.bind(address);
+		server.configureBlocking(false);
+		Selector selector = Selector.open();
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		System.out.println("Control: " + address);
+		while (true) {
+			selector.select();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				try {
+					if (key.isAcceptable()) {
+						SocketChannel client = server.accept();
+						if (client != null) {
+							client.configureBlocking(false);
+							client.register(selector, SelectionKey.OP_READ, new Connection());
+						}
+						continue;
+					}
+					SocketChannel client = (SocketChannel) key.channel();
+					Connection connection = (Connection) key.attachment();
+					if (key.isReadable()) {
+						if (client.read(connection.in) < 0) {
+							key.cancel();
+							client.close();
+							continue;
+						}
+						lines(connection);
+					}
+					connection.out.flip();
+					client.write(connection.out);
+					connection.out.compact();
+					key.interestOps(connection.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+							: SelectionKey.OP_READ);
+				} catch (IOException e) {
+					key.cancel();
+					key.channel().close();
+				}
+			}
+		}
+	}
+
+	void lines(Connection connection) {
+		ByteBuffer in = connection.in;
+		in.flip();
+		int start = 0;
+		for (int i = 0; i < in.limit(); i++) {
+			if (in.get(i) == '\n') {
+				String line = new String(in.array(), start, i - start, StandardCharsets.UTF_8);
+				start = i + 1;
+				String reply = execute(line);
+				if (reply != null) {
+					byte[] bytes = (reply + "\n").getBytes(StandardCharsets.UTF_8);
+					if (bytes.length <= connection.out.remaining()) {
+						connection.out.put(bytes);
+					}
+				}
+			}
+		}
+		in.position(start);
+		in.compact();
+		if (!in.hasRemaining()) {
+			in.clear();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		Sound sound = new Sound(new ArrayList<FreqVol>(), Wavetable.saw);
+		Headless headless = new Headless(sound);
+		String journal = System.getProperty("nuchord.journal");
+		if (journal != null) {
+			Journal.record(Paths.get(journal), sound);
+		}
+		String control = System.getProperty("nuchord.control");
+		if (control != null) {
+			SocketAddress address = address(control);
+			Thread selector = new Thread("nuchord-control") {
+				public void run() {
+					try {
+						headless.serve(address);
+					} catch (IOException e) {
+						System.err.println(e);
+					}
+				}
+			};
+			selector.setDaemon(true);
+			selector.start();
+		}
+		Thread input = new Thread(headless::stdin, "nuchord-stdin");
+		input.setDaemon(true);
+		input.start();
+		headless.bus.play();
+		System.err.println("Sound playback stopped unexpectedly");
+		System.exit(1);
+	}
+}
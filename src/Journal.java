@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.locks.LockSupport;
+
+public class Journal {
+	static final int MAGIC = 0x314a434e;
+	static final byte RATE = 1, CHORD = 2, WAVE = 3, EFFECTS = 4, END = 5;
+	static final int RECORD = 256;
+	static final Oscillator[] WAVES = { Wavetable.sine, Wavetable.saw, Wavetable.square, Wavetable.triangle };
+
+	private final FileChannel channel;
+	private ByteBuffer active, spare;
+	private final Thread flusher;
+	private volatile boolean open = true;
+	private Oscillator wave;
+	private Sound.Effects effects;
+	private VoicePool.Stealing stealing;
+	public volatile long records, dropped;
+
+	public Journal(Path path, int bytes) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.active = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		this.spare = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		this.active.putInt(MAGIC);
+		this.flusher = new Thread("nuchord-journal") {
+			public void run() {
+				try {
+					while (open) {
+						LockSupport.parkNanos(100_000_000L);
+						flush();
+					}
+					flush();
+				} catch (IOException exception) {
+					System.err.println(exception);
+				}
+			}
+		};
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	public static Journal record(Path path, Sound sound) throws IOException {
+		Journal journal = new Journal(path, Integer.getInteger("nuchord.journal.buffer", 1 << 16));
+		journal.rate(sound.currentsample, sound.sampleRate);
+		journal.state(sound.currentsample, sound);
+		sound.journal = journal;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> journal.close(sound.currentsample)));
+		return journal;
+	}
+
+	private void flush() throws IOException {
+		ByteBuffer full;
+		synchronized (this) {
+			full = this.active;
+			this.active = this.spare;
+			this.spare = full;
+		}
+		full.flip();
+		while (full.hasRemaining()) {
+			this.channel.write(full);
+		}
+		full.clear();
+	}
+
+	private boolean begin(long sample, byte type) {
+		if (!this.open || this.active.remaining() < RECORD) {
+			this.dropped++;
+			return false;
+		}
+		this.active.putLong(sample).put(type);
+		return true;
+	}
+
+	private void end() {
+		this.records++;
+		if (this.active.position() > this.active.capacity() / 2) {
+			LockSupport.unpark(this.flusher);
+		}
+	}
+
+	public synchronized void rate(long sample, int rate) {
+		if (begin(sample, RATE)) {
+			this.active.putInt(rate);
+			end();
+		}
+	}
+
+	public synchronized void chord(long sample, Chord chord, double volume) {
+		if (begin(sample, CHORD)) {
+			this.active.put((byte) chord.key.let.ordinal()).put((byte) chord.key.acc.ordinal())
+					.put((byte) chord.key.oct).put((byte) chord.var.ordinal()).put((byte) chord.mod.ordinal())
+					.put((byte) (chord.maj ? 1 : 0)).putDouble(volume);
+			end();
+		}
+	}
+
+	public synchronized void state(long sample, Sound sound) {
+		Oscillator wave = sound.wave;
+		if (wave != this.wave && begin(sample, WAVE)) {
+			this.wave = wave;
+			int index = -1;
+			for (int w = 0; w < WAVES.length; w++) {
+				if (WAVES[w] == wave) {
+					index = w;
+				}
+			}
+			this.active.put((byte) index);
+			end();
+		}
+		Sound.Effects effects = sound.effects;
+		VoicePool.Stealing stealing = sound.pool.stealing;
+		if ((effects != this.effects || stealing != this.stealing) && begin(sample, EFFECTS)) {
+			this.effects = effects;
+			this.stealing = stealing;
+			int mask = (effects.trem.isPresent() ? 1 : 0) | (effects.vib.isPresent() ? 2 : 0)
+					| (effects.glide.isPresent() ? 4 : 0) | (effects.adsr.isPresent() ? 8 : 0)
+					| (effects.chorus.isPresent() ? 16 : 0);
+			this.active.put((byte) mask).put((byte) stealing.ordinal());
+			if (effects.trem.isPresent()) {
+				this.active.putDouble(effects.trem.get().stren).putDouble(effects.trem.get().freq);
+			}
+			if (effects.vib.isPresent()) {
+				this.active.putDouble(effects.vib.get().stren).putDouble(effects.vib.get().freq);
+			}
+			if (effects.glide.isPresent()) {
+				this.active.putDouble(effects.glide.get().totalTimeSeconds);
+			}
+			if (effects.adsr.isPresent()) {
+				Sound.Effects.ADSR adsr = effects.adsr.get();
+				this.active.putDouble(adsr.decayPower).putDouble(adsr.attackTime + adsr.decayTime)
+						.putDouble(adsr.sustainPower).putDouble(adsr.releaseTime);
+			}
+			if (effects.chorus.isPresent()) {
+				Sound.Effects.Chorus chorus = effects.chorus.get();
+				this.active.put((byte) chorus.voices).putDouble(chorus.detune);
+				for (int v = 0; v < chorus.voices; v++) {
+					this.active.putDouble(chorus.detunes[v]);
+				}
+			}
+			end();
+		}
+	}
+
+	public void close(long sample) {
+		synchronized (this) {
+			if (begin(sample, END)) {
+				end();
+			}
+			this.open = false;
+		}
+		LockSupport.unpark(this.flusher);
+		try {
+			this.flusher.join();
+			this.channel.close();
+		} catch (InterruptedException | IOException exception) {
+			System.err.println(exception);
+		}
+		(this.dropped > 0 ? System.err : System.out)
+				.println("Journal: " + this.records + " records written, " + this.dropped + " dropped");
+	}
+
+	public static class Replay implements Events {
+		private final ByteBuffer in;
+		private final Sound sound;
+		private final boolean offline;
+		private int rate;
+		private long start;
+		public long end;
+
+		public Replay(Path path, Sound sound, boolean offline) throws IOException {
+			this.in = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+			if (this.in.remaining() < 4 || this.in.getInt() != MAGIC) {
+				throw new IOException("Not a nuchord journal: " + path);
+			}
+			this.sound = sound;
+			this.offline = offline;
+			this.rate = sound.sampleRate;
+			for (int at = this.in.position(); at + 9 <= this.in.limit(); at = skip(at)) {
+				this.end = Math.max(this.end, this.in.getLong(at));
+				if (this.in.get(at + 8) == RATE) {
+					this.rate = this.in.getInt(at + 9);
+				}
+			}
+			if (offline) {
+				sound.sampleRate = this.rate;
+			}
+		}
+
+		private int skip(int at) {
+			int payload = 0;
+			switch (this.in.get(at + 8)) {
+				case RATE:
+					payload = 4;
+					break;
+				case CHORD:
+					payload = 14;
+					break;
+				case WAVE:
+					payload = 1;
+					break;
+				case EFFECTS:
+					int mask = this.in.get(at + 9);
+					payload = 2 + ((mask & 1) != 0 ? 16 : 0) + ((mask & 2) != 0 ? 16 : 0) + ((mask & 4) != 0 ? 8 : 0)
+							+ ((mask & 8) != 0 ? 32 : 0);
+					if ((mask & 16) != 0) {
+						payload += 9 + 8 * this.in.get(at + 9 + payload);
+					}
+					break;
+				case END:
+					break;
+				default:
+					return this.in.limit();
+			}
+			return at + 9 + payload;
+		}
+
+		public long sample() {
+			if (this.in.remaining() < 9) {
+				return Long.MAX_VALUE;
+			}
+			return this.in.getLong(this.in.position());
+		}
+
+		public void apply() {
+			this.in.getLong();
+			byte type = this.in.get();
+			switch (type) {
+				case RATE:
+					this.rate = this.in.getInt();
+					if (this.offline) {
+						this.sound.sampleRate = this.rate;
+					}
+					break;
+				case CHORD:
+					Chord.Note key = new Chord.Note(Chord.Note.Letter.values()[this.in.get()],
+							Chord.Note.Accidental.values()[this.in.get()], this.in.get());
+					Chord chord = new Chord(key, Chord.Variant.values()[this.in.get()],
+							Chord.Modifier.values()[this.in.get()], this.in.get() != 0);
+					this.sound.setFreqvols(chord, this.in.getDouble());
+					break;
+				case WAVE:
+					int index = this.in.get();
+					if (index >= 0 && index < WAVES.length) {
+						this.sound.wave = WAVES[index];
+					}
+					break;
+				case EFFECTS:
+					Sound.Effects factory = this.sound.new Effects();
+					int mask = this.in.get();
+					this.sound.pool.stealing = VoicePool.Stealing.values()[this.in.get()];
+					Optional<Sound.Effects.Tremelo> trem = (mask & 1) == 0 ? Optional.empty()
+							: Optional.of(factory.new Tremelo(this.in.getDouble(), this.in.getDouble()));
+					Optional<Sound.Effects.Vibrato> vib = (mask & 2) == 0 ? Optional.empty()
+							: Optional.of(factory.new Vibrato(this.in.getDouble(), this.in.getDouble()));
+					Optional<Sound.Effects.Glide> glide = (mask & 4) == 0 ? Optional.empty()
+							: Optional.of(factory.new Glide(this.in.getDouble()));
+					Optional<Sound.Effects.ADSR> adsr = (mask & 8) == 0 ? Optional.empty()
+							: Optional.of(factory.new ADSR(this.in.getDouble(), this.in.getDouble(),
+									this.in.getDouble(), this.in.getDouble()));
+					Optional<Sound.Effects.Chorus> chorus = Optional.empty();
+					if ((mask & 16) != 0) {
+						Sound.Effects.Chorus restored = factory.new Chorus(this.in.get(), this.in.getDouble());
+						for (int v = 0; v < restored.voices; v++) {
+							restored.detunes[v] = this.in.getDouble();
+						}
+						chorus = Optional.of(restored);
+					}
+					this.sound.effects = this.sound.new Effects(trem, vib, glide, adsr, chorus);
+					break;
+				case END:
+					break;
+				default:
+					this.in.position(this.in.limit());
+			}
+			this.sound.changed();
+		}
+
+		@Override
+		public long next() {
+			long sample = sample();
+			if (sample == Long.MAX_VALUE) {
+				return Long.MAX_VALUE;
+			}
+			if (this.start == 0) {
+				this.start = System.nanoTime();
+			}
+			return this.start + sample * 1_000_000_000L / this.rate;
+		}
+
+		@Override
+		public void dispatch() {
+			apply();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+interface Kernels {
+	void scale(double[] in, double factor, double[] out, int n);
+
+	void advance(double[] phase, int offset, double[] increment, int n);
+
+	double mix(double[] values, double[] volume, int n);
+
+	int sounding(double[] volume, int n);
+
+	void add(double[] values, double[] delta, int n);
+
+	void multiply(double[] values, double[] factor, int n);
+
+	static Kernels preferred() {
+		if (Boolean.parseBoolean(System.getProperty("nuchord.simd", "true"))) {
+			try {
+				return (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+			}
+		}
+		return new ScalarKernels();
+	}
+}
+
+class ScalarKernels implements Kernels {
+	@Override
+	public void scale(double[] in, double factor, double[] out, int n) {
+		for (int i = 0; i < n; i++) {
+			out[i] = in[i] * factor;
+		}
+	}
+
+	@Override
+	public void advance(double[] phase, int offset, double[] increment, int n) {
+		for (int i = 0; i < n; i++) {
+			double p = phase[offset + i] + increment[i];
+			phase[offset + i] = p - (long) p;
+		}
+	}
+
+	@Override
+	public double mix(double[] values, double[] volume, int n) {
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += values[i] * volume[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int sounding(double[] volume, int n) {
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (volume[i] != 0.0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void add(double[] values, double[] delta, int n) {
+		for (int i = 0; i < n; i++) {
+			values[i] += delta[i];
+		}
+	}
+
+	@Override
+	public void multiply(double[] values, double[] factor, int n) {
+		for (int i = 0; i < n; i++) {
+			values[i] *= factor[i];
+		}
+	}
+}
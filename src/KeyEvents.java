@@ -0,0 +1,47 @@
+public class KeyEvents {
+	private final long[] times;
+	private final int[] codes;
+	private final boolean[] pressed;
+	private volatile long head, tail;
+
+	public KeyEvents(int capacity) {
+		this.times = new long[capacity];
+		this.codes = new int[capacity];
+		this.pressed = new boolean[capacity];
+		this.head = 0;
+		this.tail = 0;
+	}
+
+	public boolean offer(long time, int code, boolean down) {
+		long head = this.head;
+		if (head - this.tail >= this.times.length) {
+			return false;
+		}
+		int slot = (int) (head % this.times.length);
+		this.times[slot] = time;
+		this.codes[slot] = code;
+		this.pressed[slot] = down;
+		this.head = head + 1;
+		return true;
+	}
+
+	public long nextTime() {
+		long tail = this.tail;
+		if (tail >= this.head) {
+			return Long.MAX_VALUE;
+		}
+		return this.times[(int) (tail % this.times.length)];
+	}
+
+	public int nextCode() {
+		return this.codes[(int) (this.tail % this.codes.length)];
+	}
+
+	public boolean nextPressed() {
+		return this.pressed[(int) (this.tail % this.pressed.length)];
+	}
+
+	public void pop() {
+		this.tail = this.tail + 1;
+	}
+}
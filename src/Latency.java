@@ -0,0 +1,287 @@
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.*;
+import javax.swing.JPanel;
+
+public class Latency {
+	static class CaptureLine implements SourceDataLine {
+		final AudioFormat format;
+		final int bufferSize;
+		final double nanosPerByte;
+		private long deadline, written;
+		private boolean running, open;
+		private volatile long armed, heard;
+		private volatile boolean quiet;
+
+		CaptureLine(AudioFormat format, int bufferSize) {
+			this.format = format;
+			this.bufferSize = bufferSize;
+			this.nanosPerByte = 1e9 / (format.getSampleRate() * format.getFrameSize());
+		}
+
+		void arm() {
+			this.heard = 0;
+			this.armed = System.nanoTime();
+		}
+
+		long heard() {
+			return this.heard;
+		}
+
+		boolean quiet() {
+			return this.quiet;
+		}
+
+		void silence() {
+			this.quiet = false;
+		}
+
+		private long queued(long now) {
+			return Math.max(0, this.deadline - now);
+		}
+
+		@Override
+		public int write(byte[] b, int off, int len) {
+			int room = Math.min(len, this.bufferSize);
+			for (int available = available(); available < room; available = available()) {
+				LockSupport.parkNanos((long) ((room - available) * this.nanosPerByte));
+			}
+			long now = System.nanoTime();
+			long start = Math.max(this.deadline, now);
+			int frameSize = this.format.getFrameSize();
+			boolean silent = true;
+			for (int i = 0; i < len; i++) {
+				if (b[off + i] != 0) {
+					silent = false;
+					if (this.armed != 0 && this.heard == 0) {
+						this.heard = start + (long) ((i - i % frameSize) * this.nanosPerByte);
+						this.armed = 0;
+					}
+					break;
+				}
+			}
+			if (silent) {
+				this.quiet = true;
+			}
+			this.deadline = start + (long) (len * this.nanosPerByte);
+			this.written += len;
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return this.bufferSize - (int) (queued(System.nanoTime()) / this.nanosPerByte);
+		}
+
+		@Override
+		public int getBufferSize() {
+			return this.bufferSize;
+		}
+
+		@Override
+		public AudioFormat getFormat() {
+			return this.format;
+		}
+
+		@Override
+		public void open(AudioFormat format, int bufferSize) {
+			this.open = true;
+		}
+
+		@Override
+		public void open(AudioFormat format) {
+			this.open = true;
+		}
+
+		@Override
+		public void open() {
+			this.open = true;
+		}
+
+		@Override
+		public void close() {
+			this.open = false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		@Override
+		public void start() {
+			this.running = true;
+		}
+
+		@Override
+		public void stop() {
+			this.running = false;
+		}
+
+		@Override
+		public boolean isRunning() {
+			return this.running;
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.running;
+		}
+
+		@Override
+		public void drain() {
+			LockSupport.parkNanos(queued(System.nanoTime()));
+		}
+
+		@Override
+		public void flush() {
+			this.deadline = 0;
+		}
+
+		@Override
+		public int getFramePosition() {
+			return (int) getLongFramePosition();
+		}
+
+		@Override
+		public long getLongFramePosition() {
+			long pending = (long) (queued(System.nanoTime()) / this.nanosPerByte);
+			return (this.written - pending) / this.format.getFrameSize();
+		}
+
+		@Override
+		public long getMicrosecondPosition() {
+			return (long) (getLongFramePosition() * 1e6 / this.format.getSampleRate());
+		}
+
+		@Override
+		public float getLevel() {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+
+		@Override
+		public Line.Info getLineInfo() {
+			return new DataLine.Info(SourceDataLine.class, this.format);
+		}
+
+		@Override
+		public Control[] getControls() {
+			return new Control[0];
+		}
+
+		@Override
+		public boolean isControlSupported(Control.Type control) {
+			return false;
+		}
+
+		@Override
+		public Control getControl(Control.Type control) {
+			throw new IllegalArgumentException("Unsupported control type: " + control);
+		}
+
+		@Override
+		public void addLineListener(LineListener listener) {
+		}
+
+		@Override
+		public void removeLineListener(LineListener listener) {
+		}
+	}
+
+	static final long TIMEOUT_NANOS = 2_000_000_000L;
+
+	final AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
+	final JPanel source = new JPanel();
+	final Random random = new Random(1);
+	int trials;
+
+	Latency(int trials) {
+		this.trials = trials;
+	}
+
+	static boolean await(java.util.function.BooleanSupplier done) {
+		long end = System.nanoTime() + TIMEOUT_NANOS;
+		while (!done.getAsBoolean()) {
+			if (System.nanoTime() > end) {
+				return false;
+			}
+			LockSupport.parkNanos(100_000L);
+		}
+		return true;
+	}
+
+	KeyEvent key(int id) {
+		return new KeyEvent(this.source, id, System.currentTimeMillis(), 0, KeyEvent.VK_A, 'a');
+	}
+
+	void run(int frames, int threads) {
+		Sound sound = new Sound(new ArrayList<FreqVol>(), Wavetable.saw);
+		Sound.Effects factory = sound.new Effects();
+		sound.effects = sound.new Effects(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(),
+				Optional.of(factory.new Chorus(Sound.MAX_CHORUS, 1.5)));
+		sound.threads = threads;
+		sound.bufferSize = frames;
+		Vars.sound.set(sound);
+		Vars.chord.set(Vars.chord.get().with(Chord.Variant.None, Chord.Modifier.None));
+		sound.setFreqvols(Vars.chord.get(), Vars.volume.get());
+		MultiKeyPressListener listener = new MultiKeyPressListener(null);
+		sound.events = listener;
+		Output output = new Output(null, this.format, frames);
+		CaptureLine line = new CaptureLine(this.format, frames * this.format.getFrameSize());
+		output.line = line;
+		int capacity = Math.max(2, Integer.getInteger("nuchord.ring", 4));
+		int prefill = Math.min(capacity, Math.max(1, Integer.getInteger("nuchord.prefill", 2)));
+		Thread writer = new Thread(() -> sound.stream(output, capacity, prefill), "nuchord-capture");
+		writer.start();
+		long blockNanos = (long) (1e9 * frames / this.format.getSampleRate());
+		long[] latencies = new long[this.trials];
+		int measured = 0;
+		for (int t = 0; t < this.trials; t++) {
+			line.silence();
+			if (!await(line::quiet)) {
+				break;
+			}
+			LockSupport.parkNanos((long) (this.random.nextDouble() * 2 * blockNanos));
+			line.arm();
+			long pressed = System.nanoTime();
+			listener.keyPressed(key(KeyEvent.KEY_PRESSED));
+			boolean heard = await(() -> line.heard() != 0);
+			listener.keyReleased(key(KeyEvent.KEY_RELEASED));
+			if (heard) {
+				latencies[measured++] = line.heard() - pressed;
+			}
+		}
+		sound.flags.state = Sound.SoundState.Paused;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+		}
+		long[] sorted = Arrays.copyOf(latencies, measured);
+		Arrays.sort(sorted);
+		if (measured == 0) {
+			System.out.println(String.format("%5d frames %2d threads  no output heard", frames, threads));
+			return;
+		}
+		System.out.println(String.format("%5d frames %2d threads  p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms  (%d trials)",
+				frames, threads, sorted[measured / 2] / 1e6, sorted[Math.min(measured - 1, measured * 99 / 100)] / 1e6,
+				sorted[measured - 1] / 1e6, measured));
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		Latency latency = new Latency(trials);
+		for (int frames : new int[] { 128, 256, 512, 1024 }) {
+			for (int threads : new int[] { 1, Sound.PROCESSORS }) {
+				latency.run(frames, threads);
+				if (Sound.PROCESSORS == 1) {
+					break;
+				}
+			}
+		}
+	}
+}
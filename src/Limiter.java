@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+public class Limiter {
+	static final float CEILING = 0.966f;
+
+	public final int lookahead;
+	private final int window, slots;
+	private final float[] delay;
+	private final double[] gains;
+	private final float[] peaks;
+	private final long[] times;
+	private int head, tail, write;
+	private long time;
+	private double envelope = 1.0, sum, release;
+	private volatile double reduction = 1.0;
+
+	public Limiter(int lookahead) {
+		this.lookahead = lookahead;
+		this.window = lookahead + 1;
+		this.slots = this.window + 1;
+		this.delay = new float[this.window];
+		this.gains = new double[this.window];
+		this.peaks = new float[this.slots];
+		this.times = new long[this.slots];
+		Arrays.fill(this.gains, 1.0);
+		this.sum = this.window;
+		rate(48000, 0.05);
+	}
+
+	public void rate(int sampleRate, double releaseSeconds) {
+		this.release = Math.exp(-1.0 / (releaseSeconds * sampleRate));
+	}
+
+	public double reduction() {
+		return this.reduction;
+	}
+
+	public void process(float[] buffer, int offset, int frames) {
+		int window = this.window, slots = this.slots;
+		float[] delay = this.delay, peaks = this.peaks;
+		double[] gains = this.gains;
+		long[] times = this.times;
+		int head = this.head, tail = this.tail, write = this.write;
+		long time = this.time;
+		double envelope = this.envelope, sum = this.sum, release = this.release;
+		double lowest = 1.0;
+		for (int i = offset; i < offset + frames; i++, time++) {
+			float in = buffer[i];
+			if (head != tail && times[head] <= time - window) {
+				head = head + 1 == slots ? 0 : head + 1;
+			}
+			float peak = Math.abs(in);
+			while (head != tail) {
+				int last = tail == 0 ? slots - 1 : tail - 1;
+				if (peaks[last] > peak) {
+					break;
+				}
+				tail = last;
+			}
+			peaks[tail] = peak;
+			times[tail] = time;
+			tail = tail + 1 == slots ? 0 : tail + 1;
+			float max = peaks[head];
+			double target = max > CEILING ? CEILING / max : 1.0;
+			envelope = Math.min(target, 1.0 - (1.0 - envelope) * release);
+			sum += envelope - gains[write];
+			gains[write] = envelope;
+			delay[write] = in;
+			write = write + 1 == window ? 0 : write + 1;
+			if (write == 0) {
+				sum = 0;
+				for (double gain : gains) {
+					sum += gain;
+				}
+			}
+			double gain = sum / window;
+			buffer[i] = (float) (delay[write] * gain);
+			lowest = Math.min(lowest, gain);
+		}
+		this.head = head;
+		this.tail = tail;
+		this.write = write;
+		this.time = time;
+		this.envelope = envelope;
+		this.sum = sum;
+		this.reduction = lowest;
+	}
+}
@@ -1,42 +1,26 @@
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.function.Function;
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
 import java.util.concurrent.atomic.*;
-import java.util.Collections;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.midi.MidiUnavailableException;
 import java.util.Optional;
 
 class Vars {
-	public static Function<Double, Double> sine = x -> Math.sin(x);
-	public static Function<Double, Double> square = x -> {
-		double sinValue = Math.sin(x);
-		return sinValue >= 0 ? 1.0 : -1.0;
-	};
-	public static Function<Double, Double> triangle = x -> {
-		double normalized = x % (2 * Math.PI);
-		if (normalized < 0)
-			normalized += 2 * Math.PI;
-		if (normalized <= Math.PI / 2) {
-			return 2 * normalized / Math.PI;
-		} else if (normalized <= 3 * Math.PI / 2) {
-			return 2 - 2 * normalized / Math.PI;
-		} else {
-			return 2 * normalized / Math.PI - 4;
-		}
-	};
-	public static Function<Double, Double> saw = x -> {
-		double normalized = x % (2 * Math.PI);
-		if (normalized < 0)
-			normalized += 2 * Math.PI;
-		return 2 * normalized / (2 * Math.PI) - 1;
-	};
+	public static Oscillator sine = Wavetable.sine;
+	public static Oscillator square = Wavetable.square;
+	public static Oscillator triangle = Wavetable.triangle;
+	public static Oscillator saw = Wavetable.saw;
 	public static AtomicReference<Sound> sound = new AtomicReference<Sound>(
 			new Sound(new ArrayList<FreqVol>(), saw));
 	public static AtomicReference<Chord> chord = new AtomicReference<>(
@@ -45,34 +29,51 @@ class Vars {
 	public static AtomicReference<Double> volume = new AtomicReference<Double>(0.5d);
 }
 
-class MultiKeyPressListener implements KeyListener {
-	final Set<Integer> keys = Collections.synchronizedSet(new HashSet<>());
+class MultiKeyPressListener implements KeyListener, Events {
+	final long[] keys = new long[4];
+	final KeyEvents events = new KeyEvents(256);
+	volatile Midi.Out midi;
+	private volatile Thread consumer;
 	private JFrame parentFrame;
 
 	public MultiKeyPressListener(JFrame frame) {
 		this.parentFrame = frame;
 	}
 
+	boolean down(int code) {
+		return code < keys.length * 64 && (keys[code >> 6] & (1L << code)) != 0;
+	}
+
+	String pressed() {
+		StringBuilder out = new StringBuilder("[");
+		for (int code = 0; code < keys.length * 64; code++) {
+			if (down(code)) {
+				out.append(out.length() == 1 ? "" : ", ").append(code);
+			}
+		}
+		return out.append("]").toString();
+	}
+
 	Chord.Variant handleChordVar() {
-		if (keys.contains(KeyEvent.VK_A)) {
+		if (down(KeyEvent.VK_A)) {
 			return Chord.Variant.Tonic;
 		}
-		if (keys.contains(KeyEvent.VK_W)) {
+		if (down(KeyEvent.VK_W)) {
 			return Chord.Variant.Supertonic;
 		}
-		if (keys.contains(KeyEvent.VK_S)) {
+		if (down(KeyEvent.VK_S)) {
 			return Chord.Variant.Mediant;
 		}
-		if (keys.contains(KeyEvent.VK_E)) {
+		if (down(KeyEvent.VK_E)) {
 			return Chord.Variant.Subdominant;
 		}
-		if (keys.contains(KeyEvent.VK_D)) {
+		if (down(KeyEvent.VK_D)) {
 			return Chord.Variant.Dominant;
 		}
-		if (keys.contains(KeyEvent.VK_R)) {
+		if (down(KeyEvent.VK_R)) {
 			return Chord.Variant.Submediant;
 		}
-		if (keys.contains(KeyEvent.VK_F)) {
+		if (down(KeyEvent.VK_F)) {
 			return Chord.Variant.LeadingTone;
 		}
 		return Chord.Variant.None;
@@ -80,16 +81,16 @@ class MultiKeyPressListener implements KeyListener {
 
 	Chord.Modifier handleChordMod() {
 		int v, h;
-		if (keys.contains(KeyEvent.VK_UP)) {
+		if (down(KeyEvent.VK_UP)) {
 			v = 1;
-		} else if (keys.contains(KeyEvent.VK_DOWN)) {
+		} else if (down(KeyEvent.VK_DOWN)) {
 			v = -1;
 		} else {
 			v = 0;
 		}
-		if (keys.contains(KeyEvent.VK_LEFT)) {
+		if (down(KeyEvent.VK_LEFT)) {
 			h = 1;
-		} else if (keys.contains(KeyEvent.VK_RIGHT)) {
+		} else if (down(KeyEvent.VK_RIGHT)) {
 			h = -1;
 		} else {
 			h = 0;
@@ -114,40 +115,87 @@ class MultiKeyPressListener implements KeyListener {
 			return Chord.Modifier.None;
 	}
 
-	Function<Double, Double> handleWave() {
-		if (keys.contains(KeyEvent.VK_1)) {
+	Oscillator handleWave() {
+		if (down(KeyEvent.VK_1)) {
 			return Vars.sine;
 		}
-		if (keys.contains(KeyEvent.VK_2)) {
+		if (down(KeyEvent.VK_2)) {
 			return Vars.saw;
 		}
-		if (keys.contains(KeyEvent.VK_3)) {
+		if (down(KeyEvent.VK_3)) {
 			return Vars.square;
 		}
-		if (keys.contains(KeyEvent.VK_4)) {
+		if (down(KeyEvent.VK_4)) {
 			return Vars.triangle;
 		}
 		return Vars.sound.get().wave;
 	}
 
-	double handleVolume() {
+	double handleVolume(int code) {
 		double step = 0.01;
-		if (keys.contains(KeyEvent.VK_T)) {
+		if (code == KeyEvent.VK_T) {
 			return Vars.volume.get() + step;
 		}
-		if (keys.contains(KeyEvent.VK_G)) {
+		if (code == KeyEvent.VK_G) {
 			return Vars.volume.get() - step;
 		}
 		return Vars.volume.get();
 	}
 
-	boolean shouldOpenEffectsMenu() {
-		return keys.contains(KeyEvent.VK_B);
+	@Override
+	public long next() {
+		return events.nextTime();
+	}
+
+	@Override
+	public void dispatch() {
+		int code = events.nextCode();
+		boolean pressed = events.nextPressed();
+		events.pop();
+		if (code >= keys.length * 64) {
+			return;
+		}
+		if (pressed) {
+			keys[code >> 6] |= 1L << code;
+		} else {
+			keys[code >> 6] &= ~(1L << code);
+		}
+		Sound sound = Vars.sound.get();
+		Chord.Variant var = handleChordVar();
+		Chord.Modifier mod = handleChordMod();
+		double volume = pressed ? handleVolume(code) : Vars.volume.get();
+		Chord currentChord = Vars.chord.get();
+		if (!(currentChord.mod == mod && currentChord.var == var) || Vars.volume.get() != volume) {
+			Vars.chord.set(currentChord.with(var, mod));
+			Vars.volume.set(volume);
+			sound.setFreqvols(Vars.chord.get(), volume);
+			Midi.Out midi = this.midi;
+			if (midi != null) {
+				midi.send(Vars.chord.get(), volume, -1);
+			}
+		}
+		sound.wave = handleWave();
+		sound.changed();
+	}
+
+	void consume() {
+		this.consumer = Thread.currentThread();
+		while (true) {
+			while (next() <= System.nanoTime()) {
+				dispatch();
+			}
+			LockSupport.park(this);
+		}
 	}
 
 	@Override
 	public void keyPressed(KeyEvent e) {
-		keys.add(e.getKeyCode());
+		events.offer(System.nanoTime(), e.getKeyCode(), true);
+		LockSupport.unpark(consumer);
+		if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+			System.out.println("Quitting...");
+			System.exit(0);
+		}
 		if (e.getKeyCode() == KeyEvent.VK_B) {
 			SwingUtilities.invokeLater(() -> {
 				EffectsSettingsMenu effectsMenu = new EffectsSettingsMenu(parentFrame, Vars.sound.get());
@@ -158,11 +206,8 @@ class MultiKeyPressListener implements KeyListener {
 
 	@Override
 	public void keyReleased(KeyEvent e) {
-		keys.remove(e.getKeyCode());
-		Vars.sound.get().effects.adsr.ifPresent(a -> {
-			a.release();
-		});
-
+		events.offer(System.nanoTime(), e.getKeyCode(), false);
+		LockSupport.unpark(consumer);
 	}
 
 	@Override
@@ -171,7 +216,16 @@ class MultiKeyPressListener implements KeyListener {
 }
 
 public class Main {
-	public static void main(String[] args) throws InterruptedException, IOException {
+	static String controls() throws IOException {
+		try (InputStream in = Main.class.getResourceAsStream("controls.html")) {
+			if (in != null) {
+				return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		}
+		return new String(Files.readAllBytes(Paths.get("src/controls.html")), StandardCharsets.UTF_8);
+	}
+
+	public static void main(String[] args) throws InterruptedException, IOException, MidiUnavailableException {
 		JFrame frame = new JFrame("NUCHORD - (c) Samiyel Frazier 2025");
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.setSize(500, 600);
@@ -181,14 +235,36 @@ public class Main {
 		frame.setLocation((1920 - 500) / 2, (1080 - 600) / 2);
 		MultiKeyPressListener listener = new MultiKeyPressListener(frame);
 		frame.addKeyListener(listener);
+		Sound temp = Vars.sound.get();
+		temp.effects = temp.new Effects(
+				Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+		String journal = System.getProperty("nuchord.journal");
+		if (journal != null) {
+			Journal.record(Paths.get(journal), temp);
+		}
+		String replay = System.getProperty("nuchord.replay");
+		temp.events = replay != null ? new Journal.Replay(Paths.get(replay), temp, false) : listener;
+		Vars.chord.set(Vars.chord.get().with(Chord.Variant.None, Chord.Modifier.None));
+		temp.setFreqvols(Vars.chord.get(), Vars.volume.get());
+		Vars.sound.set(temp);
+		Midi.Out midi = Midi.open(listener);
+		if (midi == null) {
+			Thread audio = new Thread("nuchord-audio") {
+				public void run() {
+					temp.play();
+					System.err.println("Sound playback stopped unexpectedly");
+					System.exit(1);
+				}
+			};
+			audio.start();
+		}
 		JPanel panel = new JPanel();
 		panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
-		String controlstext = new String(Files.readAllBytes(Paths.get("src/controls.html")), StandardCharsets.UTF_8);
-		JLabel info = new JLabel(controlstext);
+		JLabel info = new JLabel();
 		info.setVerticalAlignment(JLabel.TOP);
 		panel.add(info);
-		JLabel debuginfo = new JLabel("");
-		debuginfo.setVerticalAlignment(JLabel.BOTTOM);
+		info.setAlignmentX(JLabel.LEFT_ALIGNMENT);
+		StatusPanel debuginfo = new StatusPanel();
 		panel.add(debuginfo);
 		JMenuBar menuBar = new JMenuBar();
 		JMenu settingsMenu = new JMenu("Settings");
@@ -202,104 +278,106 @@ public class Main {
 		frame.setJMenuBar(menuBar);
 		frame.setContentPane(panel);
 		frame.setVisible(true);
+		String controlstext = controls();
+		SwingUtilities.invokeLater(() -> info.setText(controlstext));
 		Thread gui = new Thread() {
-			public void run() {
-				while (true) {
-					StringBuilder text = new StringBuilder("<html>");
-					text.append("Keys: ").append(listener.keys).append("<br><br>");
-					text.append("Current Frequencies:<br>");
-					for (FreqVol freqvol : Vars.sound.get().freqvols) {
-						text.append(String.format("%.2f Hz<br>", freqvol.frequency));
+			List<String> text = new ArrayList<>();
+
+			void status() {
+				text.clear();
+				Sound sound = Vars.sound.get();
+				text.add("Keys: " + listener.pressed());
+				text.add("");
+				text.add("Current Frequencies:");
+				VoiceSet voiceSet = sound.voiceSet();
+				for (double frequency : voiceSet.frequency) {
+					text.add(String.format("%.2f Hz", frequency));
+				}
+				text.add("Voice Set Updates: " + voiceSet.sequence + " (" + sound.coalesced() + " coalesced)");
+				text.add("");
+				text.add("Volume: " + String.format("%.2f", Vars.volume.get()));
+				if (sound.effects != null) {
+					text.add("");
+					text.add("Active Effects:");
+					if (sound.effects.trem.isPresent()) {
+						Sound.Effects.Tremelo trem = sound.effects.trem.get();
+						text.add(String.format("- Tremolo (Strength: %.2f, Freq: %.1f Hz)", trem.stren, trem.freq));
 					}
-					text.append("<br>Volume: ").append(String.format("%.2f", Vars.volume.get())).append("<br>");
-					if (Vars.sound.get().effects != null) {
-						text.append("<br>Active Effects:<br>");
-						if (Vars.sound.get().effects.trem.isPresent()) {
-							Sound.Effects.Tremelo trem = Vars.sound.get().effects.trem.get();
-							text.append("- Tremolo (Strength: ").append(String.format("%.2f", trem.stren))
-									.append(", Freq: ").append(String.format("%.1f Hz", trem.freq)).append(")<br>");
-						}
-						if (Vars.sound.get().effects.vib.isPresent()) {
-							Sound.Effects.Vibrato vib = Vars.sound.get().effects.vib.get();
-							text.append("- Vibrato (Strength: ").append(String.format("%.2f", vib.stren))
-									.append(", Freq: ").append(String.format("%.1f Hz", vib.freq)).append(")<br>");
-						}
-						if (Vars.sound.get().effects.adsr.isPresent()) {
-							text.append("- ADSR Envelope<br>");
-						}
-						if (Vars.sound.get().effects.glide.isPresent()) {
-							Sound.Effects.Glide glide = Vars.sound.get().effects.glide.get();
-							text.append("- Glide (Duration: ").append(String.format("%.1fs", glide.totalTimeSeconds))
-									.append(")<br>");
-						}
-						if (Vars.sound.get().effects.chorus.isPresent()) {
-							Sound.Effects.Chorus chorus = Vars.sound.get().effects.chorus.get();
-							text.append("- Chorus (Voices: ").append(chorus.voices)
-									.append(", Detune: ").append(String.format("%.1f cents", chorus.detune))
-									.append("<br>");
-						}
-						int totalVoices = Vars.sound.get().freqvols.size();
-						if (Vars.sound.get().effects.chorus.isPresent()) {
-							totalVoices *= Vars.sound.get().effects.chorus.get().voices;
-						}
-						text.append("<br>Total Active Voices: ").append(totalVoices).append("<br>");
+					if (sound.effects.vib.isPresent()) {
+						Sound.Effects.Vibrato vib = sound.effects.vib.get();
+						text.add(String.format("- Vibrato (Strength: %.2f, Freq: %.1f Hz)", vib.stren, vib.freq));
 					}
-					text.append("</html>");
-					SwingUtilities.invokeLater(() -> {
-						debuginfo.setText(text.toString());
-					});
-					try {
-						Thread.sleep(10);
-					} catch (InterruptedException e) {
-						break;
+					if (sound.effects.adsr.isPresent()) {
+						text.add("- ADSR Envelope");
+					}
+					if (sound.effects.glide.isPresent()) {
+						Sound.Effects.Glide glide = sound.effects.glide.get();
+						text.add(String.format("- Glide (Duration: %.1fs)", glide.totalTimeSeconds));
+					}
+					if (sound.effects.chorus.isPresent()) {
+						Sound.Effects.Chorus chorus = sound.effects.chorus.get();
+						text.add(String.format("- Chorus (Voices: %d, Detune: %.1f cents)", chorus.voices, chorus.detune));
+					}
+					int totalVoices = voiceSet.size();
+					if (sound.effects.chorus.isPresent()) {
+						totalVoices *= sound.effects.chorus.get().voices;
 					}
+					text.add("");
+					text.add("Total Active Voices: " + totalVoices);
 				}
+				EngineMetrics metrics = sound.metrics;
+				text.add("");
+				text.add("Engine:");
+				text.add("Pooled Voices: " + sound.pool.active());
+				text.add("Rendered Voices: " + metrics.getActiveVoices());
+				text.add(String.format("Render Time: %.0f us (mean %.0f, max %.0f)", metrics.getLastRenderMicros(),
+						metrics.getMeanRenderMicros(), metrics.getMaxRenderMicros()));
+				text.add(String.format("Budget Used: %.1f%% (peak %.1f%%)", metrics.getBudgetUsedPercent(),
+						metrics.getPeakBudgetUsedPercent()));
+				text.add("Underruns: " + metrics.getUnderruns());
+				text.add("Ring: " + metrics.getRingOccupancy() + "/" + metrics.getRingCapacity() + " blocks (low "
+						+ metrics.getMinRingOccupancy() + ", starved " + metrics.getStarvedWrites() + ")");
+				text.add(String.format("Limiter: %.1f dB (%d frames lookahead)", metrics.getLimiterReductionDb(),
+						metrics.getLimiterLookaheadFrames()));
+				if (sound.journal != null) {
+					text.add("Journal: " + sound.journal.records + " records, " + sound.journal.dropped + " dropped");
+				}
+				debuginfo.setLines(text);
 			}
-		};
-		Thread input = new Thread() {
+
 			public void run() {
-				while (true) {
-					HashSet<Integer> keys;
-					synchronized (listener.keys) {
-						keys = new HashSet<>(listener.keys);
+				int refresh = 60;
+				try {
+					int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+							.getDisplayMode().getRefreshRate();
+					if (rate != DisplayMode.REFRESH_RATE_UNKNOWN) {
+						refresh = rate;
 					}
-					if (keys.contains(KeyEvent.VK_ESCAPE)) {
-						System.out.println("Quitting...");
-						System.exit(0);
-					}
-					Sound newsound = Vars.sound.get();
-					Chord.Variant var = listener.handleChordVar();
-					Chord.Modifier mod = listener.handleChordMod();
-					Chord currentChord = Vars.chord.get();
-					if (!(currentChord.mod == mod && currentChord.var == var)
-							|| Vars.volume.get() != listener.handleVolume()) {
-						currentChord.mod = mod;
-						currentChord.var = var;
-						Vars.chord.set(currentChord);
-						newsound.setFreqvols(Vars.chord.get(), Vars.volume.get());
-					}
-					Function<Double, Double> wav = listener.handleWave();
-					if (!(newsound.wave == wav)) {
-						newsound.wave = wav;
+				} catch (HeadlessException e) {
+				}
+				long frameMillis = Math.max(1, 1000 / refresh);
+				long metricsMillis = 250;
+				long seen = -1;
+				long lastMetrics = 0;
+				while (true) {
+					long version = Vars.sound.get().version();
+					long now = System.currentTimeMillis();
+					if (version != seen || now - lastMetrics >= metricsMillis) {
+						seen = version;
+						lastMetrics = now;
+						status();
 					}
-					Vars.volume.set(listener.handleVolume());
-					Vars.sound.set(newsound);
 					try {
-						Thread.sleep(10);
+						Thread.sleep(frameMillis);
 					} catch (InterruptedException e) {
+						break;
 					}
 				}
 			}
 		};
 		gui.start();
-		input.start();
-		Sound temp = Vars.sound.get();
-		temp.setFreqvols(Vars.chord.get(), 0);
-		temp.effects = temp.new Effects(
-				Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
-		Vars.sound.set(temp);
-		Vars.sound.get().play();
-		System.err.println("Sound playback stopped unexpectedly");
-		System.exit(1);
+		if (midi != null) {
+			listener.consume();
+		}
 	}
 }
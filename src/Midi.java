@@ -0,0 +1,226 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.io.File;
+import java.util.ArrayList;
+import javax.sound.midi.*;
+
+public class Midi {
+	static final Chord.Variant[] DEGREES = {
+			Chord.Variant.Tonic, Chord.Variant.None, Chord.Variant.Supertonic, Chord.Variant.None,
+			Chord.Variant.Mediant, Chord.Variant.Subdominant, Chord.Variant.None, Chord.Variant.Dominant,
+			Chord.Variant.None, Chord.Variant.Submediant, Chord.Variant.None, Chord.Variant.LeadingTone,
+	};
+	static final Chord.Modifier[] MODIFIERS = Chord.Modifier.values();
+
+	static int key(double frequency) {
+		return (int) Math.round(69 + 12 * Math.log(frequency / 440) / Math.log(2));
+	}
+
+	public static class Out {
+		public final Receiver receiver;
+		public final int channel;
+		private final long[] sounding = new long[2];
+		private final long[] next = new long[2];
+
+		public Out(Receiver receiver, int channel) {
+			if (channel < 0 || channel > 15) {
+				throw new IllegalArgumentException("MIDI channel out of range: " + channel);
+			}
+			this.receiver = receiver;
+			this.channel = channel;
+		}
+
+		private void message(int command, int key, int velocity, long time) {
+			try {
+				this.receiver.send(new ShortMessage(command, this.channel, key, velocity), time);
+			} catch (InvalidMidiDataException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		private int flush(int velocity, long time) {
+			int sent = 0;
+			for (int w = 0; w < 2; w++) {
+				for (long off = this.sounding[w] & ~this.next[w]; off != 0; off &= off - 1) {
+					message(ShortMessage.NOTE_OFF, (w << 6) + Long.numberOfTrailingZeros(off), 0, time);
+					sent++;
+				}
+			}
+			for (int w = 0; w < 2; w++) {
+				for (long on = this.next[w] & ~this.sounding[w]; on != 0; on &= on - 1) {
+					message(ShortMessage.NOTE_ON, (w << 6) + Long.numberOfTrailingZeros(on), velocity, time);
+					sent++;
+				}
+				this.sounding[w] = this.next[w];
+			}
+			return sent;
+		}
+
+		public synchronized int send(Chord chord, double volume, long time) {
+			this.next[0] = 0;
+			this.next[1] = 0;
+			for (double frequency : chord.frequencies()) {
+				int key = key(frequency);
+				if (key >= 0 && key < 128) {
+					this.next[key >> 6] |= 1L << key;
+				}
+			}
+			int velocity = (int) Math.max(1, Math.min(127, Math.round(volume * 127)));
+			return flush(velocity, time);
+		}
+
+		public synchronized int allOff(long time) {
+			this.next[0] = 0;
+			this.next[1] = 0;
+			return flush(0, time);
+		}
+	}
+
+	public static class In implements Receiver {
+		private final long[] held = new long[2];
+		private Chord.Modifier mod = Chord.Modifier.None;
+		private final Out thru;
+
+		public In(Out thru) {
+			this.thru = thru;
+		}
+
+		Chord.Variant variant(Chord.Note key) {
+			int tonic = key.semitone_value();
+			for (int note = 0; note < 128; note++) {
+				if ((this.held[note >> 6] & (1L << note)) != 0) {
+					Chord.Variant var = DEGREES[((note - tonic) % 12 + 12) % 12];
+					if (var != Chord.Variant.None) {
+						return var;
+					}
+				}
+			}
+			return Chord.Variant.None;
+		}
+
+		@Override
+		public synchronized void send(MidiMessage message, long time) {
+			if (!(message instanceof ShortMessage)) {
+				return;
+			}
+			ShortMessage event = (ShortMessage) message;
+			int note = event.getData1();
+			switch (event.getCommand()) {
+				case ShortMessage.NOTE_ON:
+					if (event.getData2() > 0) {
+						this.held[note >> 6] |= 1L << note;
+					} else {
+						this.held[note >> 6] &= ~(1L << note);
+					}
+					break;
+				case ShortMessage.NOTE_OFF:
+					this.held[note >> 6] &= ~(1L << note);
+					break;
+				case ShortMessage.CONTROL_CHANGE:
+					if (note != 1) {
+						return;
+					}
+					this.mod = MODIFIERS[event.getData2() * MODIFIERS.length / 128];
+					break;
+				default:
+					return;
+			}
+			Chord chord = Vars.chord.get();
+			Chord.Variant var = variant(chord.key);
+			if (chord.var == var && chord.mod == this.mod) {
+				return;
+			}
+			chord = chord.with(var, this.mod);
+			Vars.chord.set(chord);
+			Sound sound = Vars.sound.get();
+			sound.setFreqvols(chord, Vars.volume.get());
+			sound.changed();
+			if (this.thru != null) {
+				this.thru.send(chord, Vars.volume.get(), -1);
+			}
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static MidiDevice device(String name, boolean output) throws MidiUnavailableException {
+		for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+			if (!info.getName().contains(name)) {
+				continue;
+			}
+			MidiDevice device = MidiSystem.getMidiDevice(info);
+			if (output ? device.getMaxReceivers() != 0 : device.getMaxTransmitters() != 0) {
+				return device;
+			}
+		}
+		throw new MidiUnavailableException("No MIDI " + (output ? "output" : "input") + " matching " + name);
+	}
+
+	public static Out open(MultiKeyPressListener listener) throws MidiUnavailableException {
+		String outName = System.getProperty("nuchord.midi.out");
+		String inName = System.getProperty("nuchord.midi.in");
+		Out out = null;
+		if (outName != null) {
+			MidiDevice device = device(outName, true);
+			device.open();
+			out = new Out(device.getReceiver(), Integer.getInteger("nuchord.midi.channel", 0));
+			listener.midi = out;
+			Out sounding = out;
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				sounding.allOff(-1);
+				device.close();
+			}));
+			System.out.println("MIDI output: " + device.getDeviceInfo().getName());
+		}
+		if (inName != null) {
+			MidiDevice device = device(inName, false);
+			device.open();
+			device.getTransmitter().setReceiver(new In(out));
+			System.out.println("MIDI input: " + device.getDeviceInfo().getName());
+		}
+		return out;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: Midi <script> [out.mid]");
+			System.exit(1);
+		}
+		Offline offline = new Offline(new Sound(new ArrayList<FreqVol>(), Wavetable.saw));
+		offline.parse(Files.readAllLines(Paths.get(args[0])));
+		Sequence sequence = new Sequence(Sequence.SMPTE_25, 40);
+		Track track = sequence.createTrack();
+		Out out = new Out(new Receiver() {
+			@Override
+			public void send(MidiMessage message, long time) {
+				track.add(new MidiEvent(message, time / 1000));
+			}
+
+			@Override
+			public void close() {
+			}
+		}, 0);
+		int rate = offline.sound.sampleRate;
+		int sent = 0;
+		for (Offline.Event event : offline.events) {
+			sent += out.send(event.chord, offline.volume, event.sample * 1_000_000 / rate);
+		}
+		sent += out.allOff(offline.length * 1_000_000 / rate);
+		System.out.println(String.format("Sequenced %d messages over %.2fs", sent, (double) offline.length / rate));
+		if (args.length > 1) {
+			MidiSystem.write(sequence, 0, new File(args[1]));
+			System.out.println("Wrote " + args[1]);
+			return;
+		}
+		Sequencer sequencer = MidiSystem.getSequencer();
+		sequencer.open();
+		sequencer.setSequence(sequence);
+		sequencer.start();
+		while (sequencer.isRunning()) {
+			Thread.sleep(50);
+		}
+		sequencer.close();
+	}
+}
@@ -0,0 +1,28 @@
+public class Modulation {
+	static final int CONTROL = 32;
+
+	public static class Lfo {
+		private double phase;
+
+		public double value() {
+			return Math.sin(Math.TAU * this.phase);
+		}
+
+		public double advance(double frequency, int samples, int sampleRate) {
+			double phase = this.phase + frequency * samples / sampleRate;
+			this.phase = phase - Math.floor(phase);
+			return value();
+		}
+	}
+
+	public final double[] gain = new double[Sound.MAX_BLOCK / CONTROL + 2];
+	public final double[] ratio = new double[Sound.MAX_BLOCK / CONTROL + 2];
+
+	public static int subBlocks(int frames) {
+		return (frames + CONTROL - 1) / CONTROL;
+	}
+
+	public static int length(int subBlock, int frames) {
+		return Math.min(CONTROL, frames - subBlock * CONTROL);
+	}
+}
@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+
+public class Offline {
+	static class Event {
+		long sample;
+		Chord chord;
+
+		Event(long sample, Chord chord) {
+			this.sample = sample;
+			this.chord = chord;
+		}
+	}
+
+	Sound sound;
+	Chord.Note key = new Chord.Note(Chord.Note.Letter.G, Chord.Note.Accidental.Sharp, 3);
+	double volume = 0.5;
+	List<Event> events = new ArrayList<>();
+	Journal.Replay replay;
+	long length = 0;
+	boolean ended;
+
+	public Offline(Sound sound) {
+		this.sound = sound;
+	}
+
+	long toSamples(String seconds) {
+		return (long) (Double.parseDouble(seconds) * sound.sampleRate);
+	}
+
+	public void parse(List<String> lines) {
+		for (String line : lines) {
+			line = line.strip();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] words = line.split("\\s+");
+			switch (words[0]) {
+				case "key":
+					key = new Chord.Note(Chord.Note.Letter.valueOf(words[1]),
+							Chord.Note.Accidental.valueOf(words[2]), Integer.parseInt(words[3]));
+					break;
+				case "volume":
+					volume = Double.parseDouble(words[1]);
+					break;
+				case "end":
+					length = toSamples(words[1]);
+					ended = true;
+					break;
+				default:
+					Chord chord = new Chord(key, Chord.Variant.valueOf(words[1]),
+							Chord.Modifier.valueOf(words[2]), words[3].equals("maj"));
+					events.add(new Event(toSamples(words[0]), chord));
+			}
+		}
+		events.sort((a, b) -> Long.compare(a.sample, b.sample));
+		if (!events.isEmpty()) {
+			long last = events.get(events.size() - 1).sample;
+			length = Math.max(length, ended ? last : last + sound.sampleRate);
+		}
+	}
+
+	public void replay(Path path) throws IOException {
+		replay = new Journal.Replay(path, sound, true);
+		length = replay.end;
+	}
+
+	long nextSample(int next) {
+		if (replay != null) {
+			return replay.sample();
+		}
+		return next < events.size() ? events.get(next).sample : Long.MAX_VALUE;
+	}
+
+	static void writeHeader(MappedByteBuffer out, int sampleRate, int bytesPerSample, long dataBytes) {
+		out.put("RIFF".getBytes());
+		out.putInt((int) (36 + dataBytes));
+		out.put("WAVE".getBytes());
+		out.put("fmt ".getBytes());
+		out.putInt(16);
+		out.putShort((short) 1);
+		out.putShort((short) 1);
+		out.putInt(sampleRate);
+		out.putInt(sampleRate * bytesPerSample);
+		out.putShort((short) bytesPerSample);
+		out.putShort((short) (bytesPerSample * 8));
+		out.put("data".getBytes());
+		out.putInt((int) dataBytes);
+	}
+
+	public double render(String path) throws IOException {
+		AudioFormat format = new AudioFormat(sound.sampleRate, 32, 1, true, false);
+		int frameSize = format.getFrameSize();
+		long dataBytes = length * frameSize;
+		Bus bus = new Bus(sound);
+		int latency = bus.limiter.lookahead;
+		float[] block = new float[sound.bufferSize];
+		byte[] buffer = new byte[sound.bufferSize * frameSize];
+		long start, elapsed;
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, 44 + dataBytes);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			writeHeader(out, sound.sampleRate, frameSize, dataBytes);
+			start = System.nanoTime();
+			int next = 0;
+			long position = 0;
+			while (position < length + latency) {
+				while (nextSample(next) <= position) {
+					if (replay != null) {
+						replay.apply();
+					} else {
+						sound.setFreqvols(events.get(next).chord, volume);
+						next++;
+					}
+				}
+				long until = Math.min(nextSample(next), length + latency);
+				int frames = (int) Math.min(sound.bufferSize, until - position);
+				bus.render(block, 0, frames);
+				int skip = (int) Math.max(0, Math.min(frames, latency - position));
+				System.arraycopy(block, skip, block, 0, frames - skip);
+				Output.encode(block, frames - skip, format, buffer);
+				out.put(buffer, 0, (frames - skip) * frameSize);
+				position += frames;
+			}
+			out.force();
+			elapsed = System.nanoTime() - start;
+		}
+		double seconds = (double) length / sound.sampleRate;
+		return seconds / (elapsed / 1e9);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: Offline <script|journal.ncj> <out.wav>");
+			System.exit(1);
+		}
+		Offline offline = new Offline(new Sound(new ArrayList<FreqVol>(), Wavetable.saw));
+		if (args[0].endsWith(".ncj")) {
+			offline.replay(Paths.get(args[0]));
+		} else {
+			offline.parse(Files.readAllLines(Paths.get(args[0])));
+		}
+		double factor = offline.render(args[1]);
+		System.out.println(String.format("Rendered %.2fs to %s at %.1fx realtime",
+				(double) offline.length / offline.sound.sampleRate, args[1], factor));
+	}
+}
@@ -0,0 +1,156 @@
+import javax.sound.sampled.*;
+
+public class Output {
+	static final float[] RATES = { 48000, 44100, 96000, 88200 };
+	static final int[] BITS = { 24, 16, 32 };
+	static final int[] CHANNELS = { 2, 1 };
+
+	public final Mixer.Info mixer;
+	public final AudioFormat format;
+	public final int frames;
+	public SourceDataLine line;
+
+	Output(Mixer.Info mixer, AudioFormat format, int frames) {
+		this.mixer = mixer;
+		this.format = format;
+		this.frames = frames;
+	}
+
+	static int rank(int[] preferred, int value, int forced) {
+		if (forced > 0) {
+			return value == forced ? 0 : -1;
+		}
+		for (int i = 0; i < preferred.length; i++) {
+			if (preferred[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static int rank(float[] preferred, float value, float forced) {
+		if (forced > 0) {
+			return value == forced ? 0 : -1;
+		}
+		for (int i = 0; i < preferred.length; i++) {
+			if (preferred[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static AudioFormat withRate(AudioFormat format, float rate) {
+		return new AudioFormat(format.getEncoding(), rate, format.getSampleSizeInBits(), format.getChannels(),
+				format.getFrameSize(), rate, format.isBigEndian());
+	}
+
+	static AudioFormat resolve(Mixer mixer, AudioFormat format, float forcedRate) {
+		float rate = format.getSampleRate();
+		if (rate != AudioSystem.NOT_SPECIFIED) {
+			return forcedRate > 0 && rate != forcedRate ? null : format;
+		}
+		float[] rates = forcedRate > 0 ? new float[] { forcedRate } : RATES;
+		for (float candidate : rates) {
+			AudioFormat concrete = withRate(format, candidate);
+			if (mixer.isLineSupported(new DataLine.Info(SourceDataLine.class, concrete))) {
+				return concrete;
+			}
+		}
+		return null;
+	}
+
+	public static Output negotiate(int bufferSize) {
+		float forcedRate = Integer.getInteger("nuchord.rate", 0);
+		int forcedBits = Integer.getInteger("nuchord.bits", 0);
+		int forcedChannels = Integer.getInteger("nuchord.channels", 0);
+		String mixerName = System.getProperty("nuchord.mixer");
+		int frames = Integer.getInteger("nuchord.buffer", bufferSize);
+		Output best = null;
+		int bestScore = Integer.MAX_VALUE;
+		for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+			if (mixerName != null && !info.getName().contains(mixerName)) {
+				continue;
+			}
+			Mixer mixer = AudioSystem.getMixer(info);
+			for (Line.Info lineInfo : mixer.getSourceLineInfo()) {
+				if (!(lineInfo instanceof DataLine.Info)
+						|| !SourceDataLine.class.isAssignableFrom(lineInfo.getLineClass())) {
+					continue;
+				}
+				for (AudioFormat format : ((DataLine.Info) lineInfo).getFormats()) {
+					if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())) {
+						continue;
+					}
+					int bits = rank(BITS, format.getSampleSizeInBits(), forcedBits);
+					int channels = rank(CHANNELS, format.getChannels(), forcedChannels);
+					if (bits < 0 || channels < 0) {
+						continue;
+					}
+					AudioFormat concrete = resolve(mixer, format, forcedRate);
+					if (concrete == null) {
+						continue;
+					}
+					int rate = rank(RATES, concrete.getSampleRate(), forcedRate);
+					if (rate < 0) {
+						continue;
+					}
+					int score = (rate * BITS.length + bits) * CHANNELS.length + channels;
+					if (score < bestScore) {
+						bestScore = score;
+						best = new Output(info, concrete, frames);
+					}
+				}
+			}
+		}
+		if (best == null) {
+			float rate = forcedRate > 0 ? forcedRate : RATES[0];
+			int bits = forcedBits > 0 ? forcedBits : 16;
+			int channels = forcedChannels > 0 ? forcedChannels : 2;
+			best = new Output(null, new AudioFormat(rate, bits, channels, true, false), frames);
+		}
+		return best;
+	}
+
+	public void open() throws LineUnavailableException {
+		if (this.mixer != null) {
+			this.line = (SourceDataLine) AudioSystem.getMixer(this.mixer)
+					.getLine(new DataLine.Info(SourceDataLine.class, this.format));
+		} else {
+			this.line = AudioSystem.getSourceDataLine(this.format);
+		}
+		this.line.open(this.format, this.frames * this.format.getFrameSize());
+	}
+
+	public static void encode(float[] in, int frames, AudioFormat format, byte[] out) {
+		int bytes = format.getSampleSizeInBits() / 8;
+		int channels = format.getChannels();
+		boolean bigEndian = format.isBigEndian();
+		int b = 0;
+		for (int f = 0; f < frames; f++) {
+			int intSample = (int) (in[f] * Integer.MAX_VALUE);
+			for (int c = 0; c < channels; c++) {
+				for (int i = 0; i < bytes; i++) {
+					int shift = bigEndian ? 8 * (3 - i) : 8 * (4 - bytes + i);
+					out[b++] = (byte) ((intSample >> shift) & 0xFF);
+				}
+			}
+		}
+	}
+
+	public static boolean silent(byte[] buffer) {
+		for (byte b : buffer) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		String name = this.mixer == null ? "default mixer" : this.mixer.getName();
+		double latency = 1000.0 * this.frames / this.format.getSampleRate();
+		return String.format("%s, %s, %d frame buffer (%.1f ms)", name, this.format, this.frames, latency);
+	}
+}
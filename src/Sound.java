@@ -1,9 +1,12 @@
-import javax.sound.sampled.*;
 import java.util.ArrayList;
-import java.util.function.Function;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.Optional;
 import java.util.Random;
 
@@ -37,6 +40,87 @@ class FreqVol {
 	}
 }
 
+class VoiceSet {
+	public static final VoiceSet EMPTY = new VoiceSet(new double[0], new double[0], 0);
+
+	public final double[] frequency, volume, from;
+	public final int glide;
+	public final long sequence;
+
+	VoiceSet(double[] frequency, double[] volume, long sequence) {
+		this(frequency, volume, null, 0, sequence);
+	}
+
+	VoiceSet(double[] frequency, double[] volume, double[] from, int glide, long sequence) {
+		this.frequency = frequency;
+		this.volume = volume;
+		this.from = from;
+		this.glide = glide;
+		this.sequence = sequence;
+	}
+
+	public int size() {
+		return this.frequency.length;
+	}
+
+	public List<FreqVol> freqvols() {
+		List<FreqVol> out = new ArrayList<>(size());
+		for (int n = 0; n < size(); n++) {
+			out.add(new FreqVol(this.frequency[n], this.volume[n]));
+		}
+		return out;
+	}
+
+	public VoiceSet next(List<FreqVol> freqvols) {
+		int count = Math.min(freqvols.size(), Sound.MAX_NOTES);
+		double[] frequency = new double[count];
+		double[] volume = new double[count];
+		for (int n = 0; n < count; n++) {
+			frequency[n] = freqvols.get(n).frequency;
+			volume[n] = freqvols.get(n).volume;
+		}
+		return new VoiceSet(frequency, volume, this.sequence + 1);
+	}
+}
+
+class Voices {
+	public final double[] frequency, volume, delta, glide, phase;
+	public int count;
+
+	public Voices(int capacity) {
+		this.frequency = new double[capacity];
+		this.volume = new double[capacity];
+		this.delta = new double[capacity];
+		this.glide = new double[capacity];
+		this.phase = new double[capacity];
+		this.count = 0;
+	}
+
+	public int capacity() {
+		return this.frequency.length;
+	}
+}
+
+interface Oscillator {
+	double apply(double phase);
+
+	default double apply(double phase, double increment) {
+		return apply(phase);
+	}
+
+	default void apply(double[] phase, int offset, double[] increment, double[] out, int n) {
+		for (int v = 0; v < n; v++) {
+			out[v] = apply(phase[offset + v], increment[v]);
+		}
+	}
+}
+
+interface Events {
+	long next();
+
+	void dispatch();
+}
+
 public class Sound {
 	public double lerp(double a, double b, double t) {
 		return a + (t * (b - a));
@@ -45,13 +129,10 @@ public class Sound {
 	public class Effects {
 		public class Tremelo {
 			public double stren, freq;
+			public final Modulation.Lfo lfo = new Modulation.Lfo();
 
-			public FreqVol apply(FreqVol in) {
-				double t = (double) currentsample / (double) sampleRate;
-				double lfo = Math.sin(Math.TAU * freq * t);
-				double modulation = (1 - stren) + (stren * (lfo + 1) / 2);
-				FreqVol out = new FreqVol(in.frequency, in.volume * modulation);
-				return out;
+			public double gain(double lfo) {
+				return (1 - stren) + (stren * (lfo + 1) / 2);
 			}
 
 			public Tremelo(double strength, double frequency) {
@@ -63,9 +144,10 @@ public class Sound {
 		public class Vibrato {
 			public double stren;
 			public double freq;
+			public final Modulation.Lfo lfo = new Modulation.Lfo();
 
-			public FreqVol apply(FreqVol in) {
-				return in;
+			public double ratio(double lfo) {
+				return Math.pow(2, stren * lfo);
 			}
 
 			public Vibrato(double strength, double frequency) {
@@ -75,20 +157,48 @@ public class Sound {
 		}
 
 		public class Glide {
-			public List<FreqVol> start, stop, cur;
 			public double totalTimeSeconds;
-			private double elapsedTimeSeconds;
-
-			public Glide() {
-				this.start = new ArrayList<>();
-				this.cur = new ArrayList<>();
-				this.stop = new ArrayList<>();
-				this.totalTimeSeconds = 0.0;
-				this.elapsedTimeSeconds = 0.0;
+
+			public Glide(double seconds) {
+				this.totalTimeSeconds = seconds;
 			}
 
-			public List<FreqVol> apply(List<FreqVol> target) {
-				return target;
+			public VoiceSet next(VoiceSet prev, double[] frequency, double[] volume) {
+				int samples = (int) (this.totalTimeSeconds * sampleRate);
+				if (samples <= 0) {
+					return new VoiceSet(frequency, volume, prev.sequence + 1);
+				}
+				double[] from = new double[frequency.length];
+				boolean[] used = new boolean[prev.size()];
+				Arrays.fill(from, Double.NaN);
+				for (int n = 0; n < frequency.length; n++) {
+					for (int p = 0; p < prev.size(); p++) {
+						if (!used[p] && prev.frequency[p] == frequency[n]) {
+							used[p] = true;
+							from[n] = frequency[n];
+							break;
+						}
+					}
+				}
+				for (int n = 0; n < frequency.length; n++) {
+					if (!Double.isNaN(from[n])) {
+						continue;
+					}
+					int nearest = -1;
+					double distance = Double.MAX_VALUE;
+					for (int p = 0; p < prev.size(); p++) {
+						double d = Math.abs(Math.log(frequency[n] / prev.frequency[p]));
+						if (!used[p] && d < distance) {
+							nearest = p;
+							distance = d;
+						}
+					}
+					if (nearest >= 0) {
+						used[nearest] = true;
+						from[n] = prev.frequency[nearest];
+					}
+				}
+				return new VoiceSet(frequency, volume, from, samples, prev.sequence + 1);
 			}
 		}
 
@@ -102,36 +212,46 @@ public class Sound {
 
 			public double attackPower, decayPower, sustainPower, releasePower;
 			public double attackTime, decayTime, releaseTime;
-			public ADSRState state;
-			public double prog;
-
-			public FreqVol apply(FreqVol in) {
-				if (this.state == ADSRState.Attack) {
-					prog += attackTime / sampleRate;
-					if (this.prog >= 1) {
-						this.state = ADSRState.Decay;
-						this.prog = 0;
+
+			private double step(double seconds) {
+				return 1 / (Math.max(seconds, 0.001) * sampleRate);
+			}
+
+			public double next(VoicePool.Voice voice, int samples) {
+				double left = samples;
+				if (voice.state == ADSRState.Attack) {
+					voice.prog += step(attackTime) * left;
+					if (voice.prog < 1) {
+						return lerp(attackPower, decayPower, voice.prog);
 					}
-					in.volume = lerp(attackPower, decayPower, prog);
-				} else if (this.state == ADSRState.Decay) {
-					prog += decayTime / sampleRate;
-					if (this.prog >= 1) {
-						this.state = ADSRState.Sustain;
-						this.prog = 0;
+					left = (voice.prog - 1) / step(attackTime);
+					voice.state = ADSRState.Decay;
+					voice.prog = 0;
+				}
+				if (voice.state == ADSRState.Decay) {
+					voice.prog += step(decayTime) * left;
+					if (voice.prog < 1) {
+						return lerp(decayPower, sustainPower, voice.prog);
 					}
-					in.volume = lerp(decayPower, sustainPower, prog);
-				} else if (this.state == ADSRState.Sustain) {
-					in.volume = sustainPower;
+					voice.state = ADSRState.Sustain;
+					voice.prog = 0;
+				}
+				if (voice.state == ADSRState.Sustain) {
+					return sustainPower;
 				} else {
-					prog += releaseTime / sampleRate;
-					in.volume = lerp(sustainPower, releasePower, prog);
+					voice.prog += step(releaseTime) * samples;
+					if (voice.prog >= 1) {
+						voice.active = false;
+						return releasePower;
+					}
+					return lerp(voice.releaseFrom, releasePower, voice.prog);
 				}
-				return in;
 			}
 
-			public void release() {
-				this.prog = 0;
-				this.state = ADSRState.Release;
+			public void release(VoicePool.Voice voice) {
+				voice.releaseFrom = voice.level;
+				voice.prog = 0;
+				voice.state = ADSRState.Release;
 			}
 
 			public ADSR(double peak, double timetopeak, double sustain, double timetorelease) {
@@ -142,34 +262,52 @@ public class Sound {
 				this.attackTime = timetopeak / 2;
 				this.decayTime = timetopeak / 2;
 				this.releaseTime = timetorelease;
-				this.state = ADSRState.Attack;
-				this.prog = 0;
 			}
 		}
 
 		public class Chorus {
 			public int voices;
 			public double detune;
-			public List<Double> detunes = new ArrayList<>();
+			public double[] detunes, gains;
+			public double level;
 
 			public Chorus(int voices, double detune) {
-				this.voices = voices;
+				this.voices = Math.min(voices, MAX_CHORUS);
 				this.detune = detune;
+				this.detunes = new double[this.voices];
+				this.gains = new double[this.voices];
+				double power = 1.0;
 				for (int v = 0; v < this.voices; v++) {
 					double min = 0.0, max = this.detune;
 					double random = min + Math.random() * (max - min);
-					detunes.add(random);
+					detunes[v] = random * Math.pow(2, v);
+					gains[v] = 1 / Math.pow(2, v);
+					power += gains[v] * gains[v];
 				}
+				this.level = 1 / Math.sqrt(power);
 			}
 
-			public List<FreqVol> apply(FreqVol in) {
-				List<FreqVol> out = new ArrayList<FreqVol>();
-				for (int v = 0; v < this.voices; v++) {
-					out.add(new FreqVol(in.frequency * detunes.get(v) * Math.pow(2, v), in.volume
-							/ (Math.pow(2, v))));
+			public void apply(Voices voices) {
+				int stride = this.voices + 1;
+				int count = Math.min(voices.count, voices.capacity() / stride);
+				for (int n = count - 1; n >= 0; n--) {
+					double frequency = voices.frequency[n];
+					double volume = voices.volume[n];
+					double delta = voices.delta[n];
+					double glide = voices.glide[n];
+					int base = n * stride;
+					for (int v = 0; v < this.voices; v++) {
+						voices.frequency[base + v] = frequency * detunes[v];
+						voices.volume[base + v] = volume * gains[v];
+						voices.delta[base + v] = delta * gains[v];
+						voices.glide[base + v] = glide;
+					}
+					voices.frequency[base + this.voices] = frequency;
+					voices.volume[base + this.voices] = volume;
+					voices.delta[base + this.voices] = delta;
+					voices.glide[base + this.voices] = glide;
 				}
-				out.add(in);
-				return out;
+				voices.count = count * stride;
 			}
 		}
 
@@ -188,34 +326,38 @@ public class Sound {
 			this.chorus = chorus;
 		}
 
-		public List<FreqVol> apply(List<FreqVol> in) {
-			List<FreqVol> out = new ArrayList<>();
-			for (FreqVol freqvol : in) {
-				List<FreqVol> processedVoices = new ArrayList<>();
-				FreqVol currentVoice = new FreqVol(freqvol.frequency, freqvol.volume);
-				if (this.trem.isPresent()) {
-					currentVoice = this.trem.get().apply(currentVoice);
-				}
-				if (this.vib.isPresent()) {
-					currentVoice = this.vib.get().apply(currentVoice);
-				}
-				if (this.adsr.isPresent()) {
-					currentVoice = this.adsr.get().apply(currentVoice);
-				}
-				if (this.chorus.isPresent()) {
-					processedVoices.addAll(this.chorus.get().apply(currentVoice));
-				} else {
-					processedVoices.add(currentVoice);
+		public int stride() {
+			return this.chorus.isPresent() ? this.chorus.get().voices + 1 : 1;
+		}
+
+		public void modulate(Modulation modulation, int frames) {
+			int subBlocks = Modulation.subBlocks(frames);
+			if (this.trem.isPresent()) {
+				Tremelo trem = this.trem.get();
+				modulation.gain[0] = trem.gain(trem.lfo.value());
+				for (int k = 0; k < subBlocks; k++) {
+					int n = Modulation.length(k, frames);
+					modulation.gain[k + 1] = trem.gain(trem.lfo.advance(trem.freq, n, sampleRate));
 				}
-				out.addAll(processedVoices);
+			} else {
+				Arrays.fill(modulation.gain, 0, subBlocks + 1, 1.0);
 			}
-			if (this.glide.isPresent()) {
-				out = this.glide.get().apply(out);
+			if (this.vib.isPresent()) {
+				Vibrato vib = this.vib.get();
+				modulation.ratio[0] = vib.ratio(vib.lfo.value());
+				for (int k = 0; k < subBlocks; k++) {
+					int n = Modulation.length(k, frames);
+					modulation.ratio[k + 1] = vib.ratio(vib.lfo.advance(vib.freq, n, sampleRate));
+				}
+			} else {
+				Arrays.fill(modulation.ratio, 0, subBlocks + 1, 1.0);
 			}
-			if (out.isEmpty()) {
-				out = new ArrayList<>(in);
+		}
+
+		public void apply(Voices voices) {
+			if (this.chorus.isPresent()) {
+				this.chorus.get().apply(voices);
 			}
-			return out;
 		}
 
 		public Effects() {
@@ -233,98 +375,333 @@ public class Sound {
 	}
 
 	public class Flags {
-		SoundState state;
+		volatile SoundState state;
 
 		Flags(SoundState state) {
 			this.state = state;
 		}
 	}
 
+	class Chunk extends RecursiveAction {
+		final Voices voices;
+		final double[] increment, values;
+		final double[] sums = new double[MAX_BLOCK];
+		Effects effects;
+		Effects.ADSR adsr;
+		Oscillator wave;
+		int from, to, frames, sounding;
+		long start;
+
+		Chunk(Voices voices) {
+			this.voices = voices;
+			this.increment = new double[voices.capacity()];
+			this.values = new double[voices.capacity()];
+		}
+
+		@Override
+		protected void compute() {
+			renderVoices(this);
+		}
+	}
+
+	static final int MAX_NOTES = 32;
+	static final int MAX_CHORUS = 8;
+	static final int MAX_BLOCK = 1024;
+	static final double HEADROOM = 0.25;
+	static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+	private static ForkJoinPool workers;
+
+	static synchronized ForkJoinPool workers() {
+		if (workers == null) {
+			workers = new ForkJoinPool(PROCESSORS);
+		}
+		return workers;
+	}
+
 	int sampleRate = 44800;
 	int bufferSize = 1024;
-	public int currentsample;
-	public List<FreqVol> freqvols = new CopyOnWriteArrayList<>();
-	public Function<Double, Double> wave;
+	public long currentsample;
+	private final AtomicReference<VoiceSet> voiceSet = new AtomicReference<>(VoiceSet.EMPTY);
+	private VoiceSet rendering = VoiceSet.EMPTY;
+	private volatile int sounding;
+	private volatile long coalesced;
+	private final AtomicLong version = new AtomicLong();
+	public Oscillator wave;
+	public final VoicePool pool = new VoicePool(MAX_NOTES);
+	private final Voices voices = new Voices(MAX_NOTES * (MAX_CHORUS + 1));
+	private final Chunk[] chunks = new Chunk[PROCESSORS];
+	public volatile int threads = PROCESSORS;
+	public volatile int parallelThreshold = 64;
+	public volatile Kernels kernels = Kernels.preferred();
+	public volatile Events events;
+	public volatile Journal journal;
+	private final Modulation modulation = new Modulation();
+	private long lastRenderNanos;
 	public Flags flags;
 	public Effects effects = new Effects();
+	public final EngineMetrics metrics = new EngineMetrics(this);
+	private final float[] single = new float[1];
+
+	public VoiceSet voiceSet() {
+		return this.voiceSet.get();
+	}
+
+	public int activeVoices() {
+		return this.sounding;
+	}
+
+	public long version() {
+		return this.version.get() + this.voiceSet.get().sequence;
+	}
+
+	public void changed() {
+		this.version.incrementAndGet();
+		Journal journal = this.journal;
+		if (journal != null) {
+			journal.state(this.currentsample, this);
+		}
+	}
+
+	public long coalesced() {
+		return this.coalesced;
+	}
+
+	private void update(UnaryOperator<List<FreqVol>> change) {
+		VoiceSet prev, next;
+		do {
+			prev = this.voiceSet.get();
+			next = prev.next(change.apply(prev.freqvols()));
+		} while (!this.voiceSet.compareAndSet(prev, next));
+	}
 
 	public void setFreqvols(Chord chord, double vol) {
-		this.freqvols.clear();
-		for (Chord.Note note : chord.notes()) {
-			this.freqvols.add(new FreqVol(note.frequency(), vol));
+		double[] frequency = chord.frequencies();
+		double[] volume = new double[frequency.length];
+		Arrays.fill(volume, vol);
+		Optional<Effects.Glide> glide = this.effects.glide;
+		VoiceSet prev, next;
+		do {
+			prev = this.voiceSet.get();
+			next = glide.isPresent() ? glide.get().next(prev, frequency, volume)
+					: new VoiceSet(frequency, volume, prev.sequence + 1);
+		} while (!this.voiceSet.compareAndSet(prev, next));
+		Journal journal = this.journal;
+		if (journal != null) {
+			journal.chord(this.currentsample, chord, vol);
 		}
 	}
 
 	public void addFreqvols(Chord chord, double vol) {
-		for (Chord.Note note : chord.notes()) {
-			FreqVol freqvol = new FreqVol(note.frequency(), vol);
-			if (!this.freqvols.contains(freqvol)) {
-				this.freqvols.add(freqvol);
+		update(freqvols -> {
+			for (Chord.Note note : chord.notes()) {
+				FreqVol freqvol = new FreqVol(note.frequency(), vol);
+				if (!freqvols.contains(freqvol)) {
+					freqvols.add(freqvol);
+				}
 			}
-		}
+			return freqvols;
+		});
 	}
 
 	public void subFreqvols(Chord chord, double vol) {
-		for (Chord.Note note : chord.notes()) {
-			this.freqvols.remove(new FreqVol(note.frequency(), vol));
-		}
+		update(freqvols -> {
+			for (Chord.Note note : chord.notes()) {
+				freqvols.remove(new FreqVol(note.frequency(), vol));
+			}
+			return freqvols;
+		});
 	}
 
-	public Sound(ArrayList<FreqVol> freqvols, Function<Double, Double> wave) {
+	public Sound(ArrayList<FreqVol> freqvols, Oscillator wave) {
 		this.currentsample = 0;
-		this.freqvols = new CopyOnWriteArrayList<FreqVol>(freqvols);
+		this.voiceSet.set(VoiceSet.EMPTY.next(freqvols));
 		this.wave = wave;
 		this.flags = new Flags(SoundState.Running);
 		this.effects = new Effects();
+		this.chunks[0] = new Chunk(this.voices);
+		for (int c = 1; c < PROCESSORS; c++) {
+			this.chunks[c] = new Chunk(new Voices(this.voices.capacity()));
+		}
 	}
 
-	public float sample() {
-		try {
-			double time = this.currentsample / (double) sampleRate;
-			double sample = 0;
-			List<FreqVol> effected = this.effects.apply(this.freqvols);
-			for (FreqVol i : effected) {
-				double pitch = i.frequency * Math.TAU;
-				double vol = i.volume;
-				sample += this.wave.apply(time * pitch) * vol;
+	private void renderVoices(Chunk chunk) {
+		Voices voices = chunk.voices;
+		Kernels kernels = this.kernels;
+		Modulation modulation = this.modulation;
+		double[] phases = this.voices.phase;
+		VoicePool.Voice[] pooled = this.pool.voices;
+		double step = 1.0 / sampleRate;
+		int offset = chunk.from * chunk.effects.stride();
+		int f = 0;
+		for (int k = 0; f < chunk.frames; k++) {
+			int n = Modulation.length(k, chunk.frames);
+			int loaded = 0;
+			boolean gliding = false;
+			for (int v = chunk.from; v < chunk.to; v++) {
+				VoicePool.Voice voice = pooled[v];
+				double start = voice.active ? voice.volume * voice.level : 0.0;
+				voices.frequency[loaded] = voice.frequency;
+				voices.glide[loaded] = voice.remaining > 0 && voice.remaining < n
+						? Math.pow(voice.glide, (double) voice.remaining / n) : voice.glide;
+				gliding |= voice.glide != 1.0;
+				this.pool.advance(voice, chunk.adsr, n);
+				double end = voice.active ? voice.volume * voice.level : 0.0;
+				voices.volume[loaded] = start;
+				voices.delta[loaded] = (end - start) / n;
+				loaded++;
+			}
+			voices.count = loaded;
+			chunk.effects.apply(voices);
+			int count = voices.count;
+			double gain = modulation.gain[k];
+			double gainStep = (modulation.gain[k + 1] - gain) / n;
+			double ratio = modulation.ratio[k];
+			double ratioStep = (modulation.ratio[k + 1] - ratio) / n;
+			for (int i = 0; i < n; i++, f++) {
+				kernels.scale(voices.frequency, ratio * step, chunk.increment, count);
+				chunk.wave.apply(phases, offset, chunk.increment, chunk.values, count);
+				chunk.sums[f] = kernels.mix(chunk.values, voices.volume, count) * gain;
+				kernels.advance(phases, offset, chunk.increment, count);
+				kernels.add(voices.volume, voices.delta, count);
+				if (gliding) {
+					kernels.multiply(voices.frequency, voices.glide, count);
+				}
+				gain += gainStep;
+				ratio += ratioStep;
 			}
-			this.currentsample++;
-			int totalVoices = effected.size();
-			if (totalVoices > 0) {
-				sample = sample / totalVoices;
+			chunk.sounding = kernels.sounding(voices.volume, count);
+		}
+	}
+
+	private int renderChunks(int frames, Effects effects, Effects.ADSR adsr, Oscillator wave) {
+		int size = this.pool.size();
+		int parts = 1;
+		if (this.threads > 1 && size * effects.stride() >= this.parallelThreshold) {
+			parts = Math.min(Math.min(this.threads, PROCESSORS), size);
+		}
+		for (int c = 0; c < parts; c++) {
+			Chunk chunk = this.chunks[c];
+			chunk.effects = effects;
+			chunk.adsr = adsr;
+			chunk.wave = wave;
+			chunk.from = size * c / parts;
+			chunk.to = size * (c + 1) / parts;
+			chunk.frames = frames;
+			chunk.start = this.currentsample;
+		}
+		if (parts == 1) {
+			renderVoices(this.chunks[0]);
+			return 1;
+		}
+		ForkJoinPool workers = workers();
+		for (int c = 1; c < parts; c++) {
+			this.chunks[c].reinitialize();
+			workers.execute(this.chunks[c]);
+		}
+		renderVoices(this.chunks[0]);
+		for (int c = 1; c < parts; c++) {
+			this.chunks[c].join();
+		}
+		return parts;
+	}
+
+	public void render(float[] out, int offset, int frames) {
+		Events events = this.events;
+		if (events == null) {
+			renderSegment(out, offset, frames);
+			return;
+		}
+		long now = System.nanoTime();
+		long span = this.lastRenderNanos == 0 ? 0 : now - this.lastRenderNanos;
+		this.lastRenderNanos = now;
+		int f = 0;
+		while (f < frames) {
+			int until = frames;
+			for (long t = events.next(); t <= now; t = events.next()) {
+				int at = span <= 0 ? f : (int) Math.min(frames - 1, Math.max(f, (t - now + span) * frames / span));
+				if (at > f) {
+					until = at;
+					break;
+				}
+				events.dispatch();
 			}
-			if (sample < -1.0) {
-				sample = -1.0;
-			} else if (sample > 1.0) {
-				sample = 1.0;
+			renderSegment(out, offset + f, until - f);
+			f = until;
+		}
+	}
+
+	private void renderSegment(float[] out, int offset, int frames) {
+		Effects effects = this.effects;
+		Effects.ADSR adsr = effects.adsr.orElse(null);
+		VoiceSet set = this.voiceSet.get();
+		if (set != this.rendering) {
+			this.coalesced += set.sequence - this.rendering.sequence - 1;
+			this.rendering = set;
+			this.pool.update(set, this.currentsample, adsr);
+		}
+		double headroom = effects.chorus.isPresent() ? HEADROOM * effects.chorus.get().level : HEADROOM;
+		int f = 0;
+		try {
+			while (f < frames) {
+				int block = Math.min(frames - f, MAX_BLOCK);
+				effects.modulate(this.modulation, block);
+				int parts = renderChunks(block, effects, adsr, this.wave);
+				int totalVoices = 0;
+				for (int c = 0; c < parts; c++) {
+					totalVoices += this.chunks[c].sounding;
+				}
+				for (int b = 0; b < block; b++) {
+					double sample = 0;
+					for (int c = 0; c < parts; c++) {
+						sample += this.chunks[c].sums[b];
+					}
+					out[offset + f + b] = (float) (sample * headroom);
+				}
+				this.sounding = totalVoices;
+				this.currentsample += block;
+				this.pool.shrink();
+				f += block;
 			}
-			return (float) sample;
 		} catch (NullPointerException e) {
 			System.err.println(e);
+			Arrays.fill(out, offset + f, offset + frames, 0.0f);
 		}
-		return 0.0f;
 	}
 
-	public void play() {
-		AudioFormat format = new AudioFormat(sampleRate, 32, 1, true, false);
-		SourceDataLine line;
-		try {
-			line = AudioSystem.getSourceDataLine(format);
-			line.open(format, bufferSize);
-		} catch (LineUnavailableException exception) {
-			System.err.println(exception);
-			return;
-		}
-		line.start();
-		while (this.flags.state == SoundState.Running) {
-			float floatSample = sample();
-			byte[] buffer = new byte[4];
-			int intSample = (int) (floatSample * Integer.MAX_VALUE);
-			buffer[0] = (byte) ((intSample >> 8 * 0) & 0xFF);
-			buffer[1] = (byte) ((intSample >> 8 * 1) & 0xFF);
-			buffer[2] = (byte) ((intSample >> 8 * 2) & 0xFF);
-			buffer[3] = (byte) ((intSample >> 8 * 3) & 0xFF);
-			line.write(buffer, 0, 4);
+	public float sample() {
+		render(this.single, 0, 1);
+		return this.single[0];
+	}
+
+	public void warm(int blocks) {
+		Sound scratch = new Sound(new ArrayList<FreqVol>(), this.wave);
+		scratch.kernels = this.kernels;
+		scratch.threads = this.threads;
+		scratch.sampleRate = this.sampleRate;
+		Effects factory = scratch.new Effects();
+		scratch.effects = scratch.new Effects(Optional.of(factory.new Tremelo(0.5, 5)),
+				Optional.of(factory.new Vibrato(0.03, 4)), Optional.of(factory.new Glide(0.05)),
+				Optional.of(factory.new ADSR(0.8, 0.05, 0.6, 0.05)), Optional.of(factory.new Chorus(MAX_CHORUS, 1.5)));
+		Oscillator[] waves = { Wavetable.sine, Wavetable.saw, Wavetable.square, Wavetable.triangle };
+		Chord.Variant[] variants = Chord.Variant.values();
+		Chord.Note key = new Chord.Note(Chord.Note.Letter.C, Chord.Note.Accidental.Natural, 3);
+		float[] block = new float[MAX_BLOCK];
+		for (int b = 0; b < blocks; b++) {
+			if (b % 4 == 0) {
+				scratch.wave = waves[b / 4 % waves.length];
+				scratch.setFreqvols(new Chord(key, variants[b / 4 % variants.length], Chord.Modifier.MajMinNine, true),
+						0.5);
+			}
+			scratch.render(block, 0, block.length);
+			scratch.sample();
 		}
 	}
+
+	public void play() {
+		new Bus(this).play();
+	}
+
+	public void stream(Output output, int capacity, int prefill) {
+		new Bus(this).stream(output, capacity, prefill);
+	}
 }
@@ -0,0 +1,33 @@
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.List;
+import javax.swing.JComponent;
+
+public class StatusPanel extends JComponent {
+	private volatile String[] lines = new String[0];
+
+	public StatusPanel() {
+		setPreferredSize(new Dimension(480, 420));
+		setAlignmentX(LEFT_ALIGNMENT);
+	}
+
+	public void setLines(List<String> lines) {
+		this.lines = lines.toArray(new String[0]);
+		repaint();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		g.setColor(getForeground());
+		g.setFont(getFont());
+		FontMetrics metrics = g.getFontMetrics();
+		int y = metrics.getAscent();
+		for (String line : this.lines) {
+			g.drawString(line, 4, y);
+			y += metrics.getHeight();
+		}
+	}
+}
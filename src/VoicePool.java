@@ -0,0 +1,175 @@
+public class VoicePool {
+	enum Stealing {
+		Oldest,
+		Quietest,
+	}
+
+	public static class Voice {
+		public double frequency, target, glide = 1.0, volume, level, releaseFrom, prog;
+		public int remaining;
+		public long started;
+		public boolean active, held;
+		public Sound.Effects.ADSR.ADSRState state;
+		boolean matched;
+	}
+
+	public final Voice[] voices;
+	public volatile Stealing stealing = Stealing.Oldest;
+	private boolean[] placed;
+	private int size;
+
+	public VoicePool(int capacity) {
+		this.voices = new Voice[capacity];
+		this.placed = new boolean[capacity];
+		for (int v = 0; v < capacity; v++) {
+			this.voices[v] = new Voice();
+		}
+		this.size = 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int active() {
+		int count = 0;
+		for (int v = 0; v < this.size; v++) {
+			if (this.voices[v].active) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void shrink() {
+		while (this.size > 0 && !this.voices[this.size - 1].active) {
+			this.size--;
+		}
+	}
+
+	private Voice steal() {
+		Voice victim = null;
+		for (int v = 0; v < this.voices.length; v++) {
+			Voice voice = this.voices[v];
+			if (victim == null || (victim.held && !voice.held)) {
+				victim = voice;
+			} else if (victim.held == voice.held) {
+				if (this.stealing == Stealing.Oldest ? voice.started < victim.started : voice.level < victim.level) {
+					victim = voice;
+				}
+			}
+		}
+		return victim;
+	}
+
+	public void noteOn(double frequency, double volume, long now) {
+		Voice voice = null;
+		for (int v = 0; v < this.voices.length; v++) {
+			if (!this.voices[v].active) {
+				voice = this.voices[v];
+				this.size = Math.max(this.size, v + 1);
+				break;
+			}
+		}
+		if (voice == null) {
+			voice = steal();
+		}
+		voice.frequency = frequency;
+		voice.target = frequency;
+		voice.glide = 1.0;
+		voice.remaining = 0;
+		voice.volume = volume;
+		voice.started = now;
+		voice.active = true;
+		voice.held = true;
+		voice.matched = true;
+		voice.prog = 0;
+		voice.level = 0;
+		voice.state = Sound.Effects.ADSR.ADSRState.Attack;
+	}
+
+	public void noteOff(Voice voice, Sound.Effects.ADSR adsr) {
+		voice.held = false;
+		if (adsr == null) {
+			voice.active = false;
+		} else {
+			adsr.release(voice);
+		}
+	}
+
+	public void update(VoiceSet set, long now, Sound.Effects.ADSR adsr) {
+		for (int v = 0; v < this.size; v++) {
+			this.voices[v].matched = false;
+		}
+		if (this.placed.length < set.size()) {
+			this.placed = new boolean[set.size()];
+		}
+		boolean[] placed = this.placed;
+		for (int n = 0; n < set.size(); n++) {
+			Voice found = held(set.frequency[n]);
+			placed[n] = found != null;
+			if (found != null) {
+				found.matched = true;
+				found.volume = set.volume[n];
+			}
+		}
+		for (int n = 0; n < set.size(); n++) {
+			if (placed[n]) {
+				continue;
+			}
+			Voice found = set.from == null || Double.isNaN(set.from[n]) ? null : held(set.from[n]);
+			if (found != null) {
+				found.matched = true;
+				found.volume = set.volume[n];
+				found.target = set.frequency[n];
+				found.remaining = set.glide;
+				found.glide = Math.pow(found.target / found.frequency, 1.0 / found.remaining);
+			} else {
+				noteOn(set.frequency[n], set.volume[n], now);
+			}
+		}
+		for (int v = 0; v < this.size; v++) {
+			Voice voice = this.voices[v];
+			if (voice.held && !voice.matched) {
+				noteOff(voice, adsr);
+			}
+		}
+		shrink();
+	}
+
+	private Voice held(double frequency) {
+		for (int v = 0; v < this.size; v++) {
+			Voice voice = this.voices[v];
+			if (voice.held && !voice.matched && voice.target == frequency) {
+				return voice;
+			}
+		}
+		return null;
+	}
+
+	public void advance(Voice voice, Sound.Effects.ADSR adsr, int samples) {
+		if (!voice.active) {
+			return;
+		}
+		if (adsr != null) {
+			voice.level = adsr.next(voice, samples);
+		} else if (voice.held) {
+			voice.level = 1.0;
+			voice.state = Sound.Effects.ADSR.ADSRState.Sustain;
+		} else {
+			voice.level = 0.0;
+			voice.active = false;
+		}
+		if (voice.remaining > 0) {
+			int steps = Math.min(samples, voice.remaining);
+			for (int i = 0; i < steps; i++) {
+				voice.frequency *= voice.glide;
+			}
+			voice.remaining -= steps;
+			if (voice.remaining == 0) {
+				voice.frequency = voice.target;
+				voice.glide = 1.0;
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+public class Wavetable implements Oscillator {
+	interface Partials {
+		double amplitude(int harmonic);
+	}
+
+	static final int SIZE = 4096;
+	static final int OCTAVES = 11;
+	private static final double[] SINE = new double[SIZE];
+
+	static {
+		for (int i = 0; i < SIZE; i++) {
+			SINE[i] = Math.sin(Math.TAU * i / SIZE);
+		}
+	}
+
+	public static final Wavetable sine = new Wavetable(n -> n == 1 ? 1.0 : 0.0);
+	public static final Wavetable saw = new Wavetable(n -> -2.0 / (Math.PI * n));
+	public static final Wavetable square = new Wavetable(n -> n % 2 == 1 ? 4.0 / (Math.PI * n) : 0.0);
+	public static final Wavetable triangle = new Wavetable(n -> {
+		if (n % 2 == 0) {
+			return 0.0;
+		}
+		double sign = (n / 2) % 2 == 0 ? 1.0 : -1.0;
+		return sign * 8.0 / (Math.PI * Math.PI * n * n);
+	});
+
+	private final double[][] tables = new double[OCTAVES][];
+
+	public Wavetable(Partials partials) {
+		double[] table = new double[SIZE + 1];
+		int built = 0;
+		for (int octave = OCTAVES - 1; octave >= 0; octave--) {
+			int harmonics = (SIZE / 4) >> octave;
+			boolean changed = false;
+			for (int n = built + 1; n <= harmonics; n++) {
+				double amplitude = partials.amplitude(n);
+				if (amplitude == 0.0) {
+					continue;
+				}
+				if (!changed && octave < OCTAVES - 1) {
+					table = table.clone();
+				}
+				changed = true;
+				for (int i = 0; i < SIZE; i++) {
+					table[i] += amplitude * SINE[(int) (((long) n * i) % SIZE)];
+				}
+			}
+			table[SIZE] = table[0];
+			built = harmonics;
+			this.tables[octave] = table;
+		}
+	}
+
+	private static double lookup(double[] table, double phase) {
+		double position = phase * SIZE;
+		int index = (int) position;
+		double frac = position - index;
+		return table[index] + frac * (table[index + 1] - table[index]);
+	}
+
+	@Override
+	public double apply(double phase) {
+		return lookup(this.tables[0], phase);
+	}
+
+	@Override
+	public double apply(double phase, double increment) {
+		if (increment >= 0.5) {
+			return 0.0;
+		}
+		int octave = Math.getExponent(increment) + 12;
+		if (octave < 0) {
+			octave = 0;
+		} else if (octave >= OCTAVES) {
+			octave = OCTAVES - 1;
+		}
+		return lookup(this.tables[octave], phase);
+	}
+}
@@ -0,0 +1,88 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorKernels implements Kernels {
+	static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	static final int LANES = SPECIES.length();
+
+	@Override
+	public void scale(double[] in, double factor, double[] out, int n) {
+		int i = 0;
+		for (; i < SPECIES.loopBound(n); i += LANES) {
+			DoubleVector.fromArray(SPECIES, in, i).mul(factor).intoArray(out, i);
+		}
+		for (; i < n; i++) {
+			out[i] = in[i] * factor;
+		}
+	}
+
+	@Override
+	public void advance(double[] phase, int offset, double[] increment, int n) {
+		int i = 0;
+		for (; i < SPECIES.loopBound(n); i += LANES) {
+			DoubleVector p = DoubleVector.fromArray(SPECIES, phase, offset + i)
+					.add(DoubleVector.fromArray(SPECIES, increment, i));
+			LongVector whole = (LongVector) p.convert(VectorOperators.D2L, 0);
+			p.sub((DoubleVector) whole.convert(VectorOperators.L2D, 0)).intoArray(phase, offset + i);
+		}
+		for (; i < n; i++) {
+			double p = phase[offset + i] + increment[i];
+			phase[offset + i] = p - (long) p;
+		}
+	}
+
+	@Override
+	public double mix(double[] values, double[] volume, int n) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (; i < SPECIES.loopBound(n); i += LANES) {
+			acc = DoubleVector.fromArray(SPECIES, values, i).fma(DoubleVector.fromArray(SPECIES, volume, i), acc);
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			sum += values[i] * volume[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int sounding(double[] volume, int n) {
+		int count = 0;
+		int i = 0;
+		for (; i < SPECIES.loopBound(n); i += LANES) {
+			count += DoubleVector.fromArray(SPECIES, volume, i).compare(VectorOperators.NE, 0.0).trueCount();
+		}
+		for (; i < n; i++) {
+			if (volume[i] != 0.0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void add(double[] values, double[] delta, int n) {
+		int i = 0;
+		for (; i < SPECIES.loopBound(n); i += LANES) {
+			DoubleVector.fromArray(SPECIES, values, i).add(DoubleVector.fromArray(SPECIES, delta, i))
+					.intoArray(values, i);
+		}
+		for (; i < n; i++) {
+			values[i] += delta[i];
+		}
+	}
+
+	@Override
+	public void multiply(double[] values, double[] factor, int n) {
+		int i = 0;
+		for (; i < SPECIES.loopBound(n); i += LANES) {
+			DoubleVector.fromArray(SPECIES, values, i).mul(DoubleVector.fromArray(SPECIES, factor, i))
+					.intoArray(values, i);
+		}
+		for (; i < n; i++) {
+			values[i] *= factor[i];
+		}
+	}
+}